@@ -0,0 +1,65 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.io.InputStream;
+
+/**
+ * Reads the characters of ASCII text, such as base64, as bytes without
+ * copying the text. Other characters are read as '?'.
+ */
+final class CharSequenceInputStream extends InputStream {
+
+	private final CharSequence text;
+	private int pos;
+
+	CharSequenceInputStream(CharSequence text) {
+		this.text = text;
+	}
+
+	public int read() {
+		return pos < text.length() ? toByte(text.charAt(pos++)) : -1;
+	}
+
+	public int read(byte[] b, int off, int len) {
+		if (len == 0) {
+			return 0;
+		}
+		if (pos >= text.length()) {
+			return -1;
+		}
+		int end = Math.min(text.length(), pos + len);
+		for (int i = pos; i < end; i++) {
+			b[off++] = (byte) toByte(text.charAt(i));
+		}
+		len = end - pos;
+		pos = end;
+		return len;
+	}
+
+	public int available() {
+		return text.length() - pos;
+	}
+
+	static int toByte(char c) {
+		return c < 128 ? c : '?';
+	}
+
+}
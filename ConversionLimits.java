@@ -0,0 +1,139 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Budgets that bound the work spent on a single DOM conversion. A limit of
+ * 0 means unlimited. Input length and the deadline abort the conversion,
+ * which then falls back to the unformatted text; the other limits truncate
+ * the HTML. Either way the result tells which limit was hit. Instances are
+ * immutable.
+ */
+public final class ConversionLimits {
+
+	public enum Limit {
+		/** The DXL is longer than allowed. */
+		INPUT_LENGTH,
+		/** The HTML was cut after the last top-level element that fit. */
+		OUTPUT_LENGTH,
+		/** Elements nested deeper than allowed were left out. */
+		DEPTH,
+		/**
+		 * Table rows beyond the cell budget, which counts the cells spans
+		 * cover, were left out.
+		 */
+		TABLE_CELLS,
+		/** The conversion took longer than allowed. */
+		DEADLINE,
+		/** The converting thread was interrupted. */
+		INTERRUPTED
+	}
+
+	public static final ConversionLimits NONE = new ConversionLimits(0, 0, 0,
+			0, 0);
+
+	private final long maxInputLength;
+	private final long maxOutputLength;
+	private final int maxDepth;
+	private final int maxTableCells;
+	private final long timeoutNanos;
+
+	private ConversionLimits(long maxInputLength, long maxOutputLength,
+			int maxDepth, int maxTableCells, long timeoutNanos) {
+		this.maxInputLength = maxInputLength;
+		this.maxOutputLength = maxOutputLength;
+		this.maxDepth = maxDepth;
+		this.maxTableCells = maxTableCells;
+		this.timeoutNanos = timeoutNanos;
+	}
+
+	/**
+	 * Limits the characters of exported DXL, or of the rich text passed in.
+	 */
+	public ConversionLimits withMaxInputLength(long maxInputLength) {
+		return new ConversionLimits(checked(maxInputLength), maxOutputLength,
+				maxDepth, maxTableCells, timeoutNanos);
+	}
+
+	/**
+	 * Limits the characters of the HTML, not counting the stylesheet.
+	 */
+	public ConversionLimits withMaxOutputLength(long maxOutputLength) {
+		return new ConversionLimits(maxInputLength, checked(maxOutputLength),
+				maxDepth, maxTableCells, timeoutNanos);
+	}
+
+	public ConversionLimits withMaxDepth(int maxDepth) {
+		return new ConversionLimits(maxInputLength, maxOutputLength,
+				(int) checked(maxDepth), maxTableCells, timeoutNanos);
+	}
+
+	/**
+	 * Limits the table cells of all tables of a conversion together. A cell
+	 * spanning rows or columns counts every cell it covers.
+	 */
+	public ConversionLimits withMaxTableCells(int maxTableCells) {
+		return new ConversionLimits(maxInputLength, maxOutputLength,
+				maxDepth, (int) checked(maxTableCells), timeoutNanos);
+	}
+
+	/**
+	 * Limits the time from the start of a conversion, including the DXL
+	 * export, to its end.
+	 */
+	public ConversionLimits withTimeout(long timeout, TimeUnit unit) {
+		return new ConversionLimits(maxInputLength, maxOutputLength,
+				maxDepth, maxTableCells, unit.toNanos(checked(timeout)));
+	}
+
+	public long getMaxInputLength() {
+		return maxInputLength;
+	}
+
+	public long getMaxOutputLength() {
+		return maxOutputLength;
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public int getMaxTableCells() {
+		return maxTableCells;
+	}
+
+	public long getTimeout(TimeUnit unit) {
+		return unit.convert(timeoutNanos, TimeUnit.NANOSECONDS);
+	}
+
+	long getTimeoutNanos() {
+		return timeoutNanos;
+	}
+
+	private static long checked(long limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("limits must not be negative");
+		}
+		return limit;
+	}
+
+}
@@ -0,0 +1,37 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+/**
+ * Receives the measurements of every conversion made by a converter it is
+ * registered with. It is called on the converting thread, so it must be
+ * thread-safe when the converter is shared, and it should return quickly.
+ */
+public interface ConversionListener {
+
+	void converted(ConversionStats stats);
+
+	/**
+	 * Called instead of converted() when the conversion failed and the
+	 * unformatted text of the item was returned.
+	 */
+	void fellBack(ConversionStats stats, Exception cause);
+
+}
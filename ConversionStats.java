@@ -0,0 +1,152 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import sirius.utils.domino.ConversionLimits.Limit;
+import sirius.utils.domino.RichText2HtmlResult.Status;
+
+/**
+ * Measurements of one rich text conversion, handed to a
+ * {@link ConversionListener}. Lengths are in characters. When several items
+ * are converted from one export, the export and load figures are reported
+ * with the first item only.
+ */
+public final class ConversionStats {
+
+	public enum Phase {
+		EXPORT, LOAD, PARDEFS, TRANSFORM, SERIALIZE
+	}
+
+	private String itemName;
+	private final long[] nanos = new long[Phase.values().length];
+	private final Map<String, int[]> elements = new HashMap<String, int[]>();
+	private long inputLength;
+	private long outputLength;
+	private Status status = Status.COMPLETE;
+	private Limit limit;
+
+	ConversionStats(String itemName) {
+		this.itemName = itemName;
+	}
+
+	/**
+	 * Returns the name of the converted item, or null for a rich text string.
+	 */
+	public String getItemName() {
+		return itemName;
+	}
+
+	public long getNanos(Phase phase) {
+		return nanos[phase.ordinal()];
+	}
+
+	public long getTotalNanos() {
+		long total = 0;
+		for (long value : nanos) {
+			total += value;
+		}
+		return total;
+	}
+
+	public long getInputLength() {
+		return inputLength;
+	}
+
+	public long getOutputLength() {
+		return outputLength;
+	}
+
+	/**
+	 * Returns how the conversion ended, as the result reports it.
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns the limit that truncated or aborted the conversion, or null.
+	 */
+	public Limit getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Returns how often each DXL element with a conversion was met, keyed by
+	 * element name.
+	 */
+	public Map<String, Integer> getElementCounts() {
+		Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+		for (Map.Entry<String, int[]> entry : elements.entrySet()) {
+			counts.put(entry.getKey(), entry.getValue()[0]);
+		}
+		return counts;
+	}
+
+	public int getElementCount(String elementName) {
+		int[] count = elements.get(elementName);
+		return count == null ? 0 : count[0];
+	}
+
+	void add(Phase phase, long start) {
+		nanos[phase.ordinal()] += System.nanoTime() - start;
+	}
+
+	void count(String elementName) {
+		int[] count = elements.get(elementName);
+		if (count == null) {
+			count = new int[1];
+			elements.put(elementName, count);
+		}
+		count[0]++;
+	}
+
+	void addElementCounts(ConversionStats other) {
+		for (Map.Entry<String, int[]> entry : other.elements.entrySet()) {
+			int[] count = elements.get(entry.getKey());
+			if (count == null) {
+				elements.put(entry.getKey(), entry.getValue().clone());
+			} else {
+				count[0] += entry.getValue()[0];
+			}
+		}
+	}
+
+	void setItemName(String itemName) {
+		this.itemName = itemName;
+	}
+
+	void setInputLength(long inputLength) {
+		this.inputLength = inputLength;
+	}
+
+	void setOutputLength(long outputLength) {
+		this.outputLength = outputLength;
+	}
+
+	void setStatus(Status status, Limit limit) {
+		this.status = status;
+		this.limit = limit;
+	}
+
+}
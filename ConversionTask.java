@@ -0,0 +1,169 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A conversion submitted to an executor. Unlike a plain CompletableFuture,
+ * cancelling it interrupts the thread running the conversion, which then
+ * stops at its next limit check. A task can also expire: it then completes
+ * at its deadline whether it is still queued, parsing or stuck in a large
+ * table, and the conversion is interrupted like a cancelled one.
+ */
+final class ConversionTask<T> extends CompletableFuture<T> implements
+		Runnable {
+
+	private final Callable<T> conversion;
+	/** The thread running the conversion, guarded by this. */
+	private Thread runner;
+	/** Whether the runner was interrupted for this task, guarded by this. */
+	private boolean interrupted;
+
+	ConversionTask(Callable<T> conversion) {
+		this.conversion = conversion;
+	}
+
+	public void run() {
+		synchronized (this) {
+			if (isDone()) {
+				return;
+			}
+			runner = Thread.currentThread();
+		}
+		try {
+			complete(conversion.call());
+		} catch (Throwable e) {
+			completeExceptionally(e);
+		} finally {
+			synchronized (this) {
+				runner = null;
+				if (interrupted) {
+					// the interrupt was meant for this conversion only
+					Thread.interrupted();
+				}
+			}
+		}
+	}
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		boolean cancelled = super.cancel(mayInterruptIfRunning);
+		if (cancelled && mayInterruptIfRunning) {
+			interruptRunner();
+		}
+		return cancelled;
+	}
+
+	/**
+	 * Completes the task with the result of onExpiry once timeoutNanos have
+	 * passed, unless it is done by then.
+	 */
+	ConversionTask<T> expireAfter(long timeoutNanos, Callable<T> onExpiry) {
+		final ScheduledFuture<?> expiry = Timer.INSTANCE.schedule(() -> {
+			if (isDone()) {
+				return;
+			}
+			// stops the conversion before the callers of the future go on
+			interruptRunner();
+			try {
+				complete(onExpiry.call());
+			} catch (Throwable e) {
+				completeExceptionally(e);
+			}
+		}, timeoutNanos, TimeUnit.NANOSECONDS);
+		whenComplete((result, e) -> expiry.cancel(false));
+		return this;
+	}
+
+	private synchronized void interruptRunner() {
+		if (runner != null) {
+			runner.interrupt();
+			interrupted = true;
+		}
+	}
+
+	/**
+	 * Returns a future of the results of all tasks in order. It fails as
+	 * soon as one task fails, cancelling the others, and cancelling it
+	 * cancels all tasks.
+	 */
+	static <T> CompletableFuture<List<T>> all(
+			final List<ConversionTask<T>> tasks) {
+		final CompletableFuture<List<T>> all = new CompletableFuture<List<T>>() {
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				boolean cancelled = super.cancel(mayInterruptIfRunning);
+				for (ConversionTask<T> task : tasks) {
+					task.cancel(mayInterruptIfRunning);
+				}
+				return cancelled;
+			}
+		};
+		for (ConversionTask<T> task : tasks) {
+			task.whenComplete((result, e) -> {
+				if (e != null) {
+					all.completeExceptionally(e instanceof CompletionException
+							&& e.getCause() != null ? e.getCause() : e);
+					all.cancel(true);
+				}
+			});
+		}
+		CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]))
+				.thenRun(() -> {
+					List<T> results = new ArrayList<T>(tasks.size());
+					for (ConversionTask<T> task : tasks) {
+						results.add(task.join());
+					}
+					all.complete(results);
+				});
+		return all;
+	}
+
+	/**
+	 * Created on first use. The expiry of a task done in time is removed
+	 * at once, so the task is not kept until its deadline.
+	 */
+	private static final class Timer {
+
+		private static final ScheduledThreadPoolExecutor INSTANCE = create();
+
+		private static ScheduledThreadPoolExecutor create() {
+			ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(
+					1, runnable -> {
+						Thread thread = Executors.defaultThreadFactory()
+								.newThread(runnable);
+						thread.setName("rich-text-conversion-timer");
+						thread.setDaemon(true);
+						return thread;
+					});
+			timer.setRemoveOnCancelPolicy(true);
+			return timer;
+		}
+
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores images as files named after the SHA-256 digest of their content,
+ * so every distinct image is written once no matter how many notes embed
+ * it. An image is written to a temporary file while its digest is computed
+ * and then moved into place atomically.
+ */
+public class DirectoryImageStore implements ImageStore {
+
+	private final File dir;
+	private final String urlPrefix;
+	private final AtomicLong stored = new AtomicLong();
+	private final AtomicLong duplicates = new AtomicLong();
+
+	/**
+	 * @param urlPrefix prepended to the file name to form the URL of an
+	 *            image, e.g. "/images/"
+	 */
+	public DirectoryImageStore(File dir, String urlPrefix) throws IOException {
+		this.dir = dir;
+		this.urlPrefix = urlPrefix;
+		Files.createDirectories(dir.toPath());
+	}
+
+	public String store(String format, InputStream data) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		File temp = File.createTempFile("image", ".tmp", dir);
+		try {
+			OutputStream out = new FileOutputStream(temp);
+			try {
+				byte[] buffer = new byte[8192];
+				int length;
+				while ((length = data.read(buffer)) >= 0) {
+					digest.update(buffer, 0, length);
+					out.write(buffer, 0, length);
+				}
+			} finally {
+				out.close();
+			}
+			String name = new BigInteger(1, digest.digest()).toString(36)
+					+ "." + (format.equals("jpeg") ? "jpg" : format);
+			File file = new File(dir, name);
+			if (file.exists()) {
+				duplicates.incrementAndGet();
+			} else {
+				try {
+					Files.move(temp.toPath(), file.toPath(),
+							StandardCopyOption.ATOMIC_MOVE);
+					stored.incrementAndGet();
+				} catch (FileAlreadyExistsException e) {
+					// another thread stored the same image meanwhile
+					duplicates.incrementAndGet();
+				}
+			}
+			return urlPrefix + name;
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	public File getDirectory() {
+		return dir;
+	}
+
+	/**
+	 * Returns how many images were written as new files.
+	 */
+	public long getStored() {
+		return stored.get();
+	}
+
+	/**
+	 * Returns how many images were already stored and not written again.
+	 */
+	public long getDuplicates() {
+		return duplicates.get();
+	}
+
+}
@@ -0,0 +1,366 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Conversion results kept in an append-only file, so they survive a
+ * restart. Each record holds a key, the HTML and the CSS and is protected by
+ * a CRC-32. The index of live records is rebuilt when the cache is opened;
+ * the file is cut at the first damaged record, which is what an interrupted
+ * write leaves behind. When the file outgrows its limit, the most recently
+ * written records that fit into half of it are copied to a new file that
+ * atomically replaces the old one. Entries are read with positional reads,
+ * so a warm cache is served from the page cache.
+ */
+public final class DiskCache implements Closeable {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int MAGIC = 0x52543248;
+	private static final int HEADER = 24;
+	private static final String DATA_FILE = "richtext2html.cache";
+	private static final String COMPACT_FILE = "richtext2html.cache.tmp";
+
+	private final File dir;
+	private final long maxBytes;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	/** Live records in the order they were written. */
+	private final LinkedHashMap<String, Entry> index = new LinkedHashMap<String, Entry>();
+	private FileChannel channel;
+	private long end;
+	private long hits;
+	private long misses;
+	private long compactions;
+
+	/**
+	 * Opens the cache in the directory, creating it if needed, and
+	 * recovers the entries written before.
+	 */
+	public DiskCache(File dir, long maxBytes) throws IOException {
+		if (maxBytes < HEADER) {
+			throw new IllegalArgumentException("maxBytes is too small");
+		}
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+		Files.createDirectories(dir.toPath());
+		Files.deleteIfExists(new File(dir, COMPACT_FILE).toPath());
+		channel = open(new File(dir, DATA_FILE));
+		recover();
+	}
+
+	RichText2HtmlResult get(String key) {
+		Entry entry;
+		lock.readLock().lock();
+		try {
+			entry = index.get(key);
+			if (entry != null) {
+				ByteBuffer record = read(channel, entry.offset, entry.length);
+				RichText2HtmlResult result = record == null ? null : decode(
+						record, null);
+				if (result != null) {
+					synchronized (this) {
+						hits++;
+					}
+					return result;
+				}
+			}
+		} catch (IOException e) {
+			// an unreadable entry is treated as a miss
+		} finally {
+			lock.readLock().unlock();
+		}
+		synchronized (this) {
+			misses++;
+		}
+		return null;
+	}
+
+	void put(String key, RichText2HtmlResult result) {
+		ByteBuffer record = encode(key, result);
+		if (record.remaining() > maxBytes / 2) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			if (end + record.remaining() > maxBytes) {
+				compact(record.remaining());
+			}
+			Entry entry = new Entry(end, record.remaining());
+			write(channel, record, end);
+			end += entry.length;
+			index.remove(key);
+			index.put(key, entry);
+		} catch (IOException e) {
+			// the cache is an optimization; a failed write is dropped
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getCompactions() {
+		return compactions;
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return index.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the size of the data file, including superseded records.
+	 */
+	public long getFileBytes() {
+		lock.readLock().lock();
+		try {
+			return end;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			channel.close();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void recover() throws IOException {
+		long size = channel.size();
+		long offset = 0;
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		while (offset + HEADER <= size) {
+			header.clear();
+			readFully(channel, header, offset);
+			header.flip();
+			int length = recordLength(header);
+			if (length < 0 || offset + length > size) {
+				break;
+			}
+			ByteBuffer record = read(channel, offset, length);
+			String[] key = new String[1];
+			if (record == null || decode(record, key) == null) {
+				break;
+			}
+			index.remove(key[0]);
+			index.put(key[0], new Entry(offset, length));
+			offset += length;
+		}
+		if (offset < size) {
+			channel.truncate(offset);
+		}
+		end = offset;
+	}
+
+	/**
+	 * Copies the newest records that fit into half the limit to a new file
+	 * and replaces the data file with it.
+	 */
+	private void compact(int incoming) throws IOException {
+		long budget = maxBytes / 2 - incoming;
+		long kept = 0;
+		int skip = 0;
+		int[] lengths = new int[index.size()];
+		int n = 0;
+		for (Entry entry : index.values()) {
+			lengths[n++] = entry.length;
+		}
+		for (int i = lengths.length - 1; i >= 0; i--) {
+			if (kept + lengths[i] > budget) {
+				skip = i + 1;
+				break;
+			}
+			kept += lengths[i];
+		}
+
+		File target = new File(dir, COMPACT_FILE);
+		FileChannel compacted = open(target);
+		LinkedHashMap<String, Entry> moved = new LinkedHashMap<String, Entry>();
+		long offset = 0;
+		try {
+			int i = 0;
+			for (Map.Entry<String, Entry> entry : index.entrySet()) {
+				if (i++ < skip) {
+					continue;
+				}
+				ByteBuffer record = read(channel, entry.getValue().offset,
+						entry.getValue().length);
+				if (record == null) {
+					continue;
+				}
+				write(compacted, record, offset);
+				moved.put(entry.getKey(), new Entry(offset,
+						entry.getValue().length));
+				offset += entry.getValue().length;
+			}
+			compacted.force(true);
+		} finally {
+			compacted.close();
+		}
+		channel.close();
+		try {
+			Files.move(target.toPath(), new File(dir, DATA_FILE).toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			channel = open(new File(dir, DATA_FILE));
+		}
+		index.clear();
+		index.putAll(moved);
+		end = offset;
+		synchronized (this) {
+			compactions++;
+		}
+	}
+
+	private static FileChannel open(File file) throws IOException {
+		return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	private static ByteBuffer encode(String key, RichText2HtmlResult result) {
+		byte[] keyBytes = key.getBytes(UTF8);
+		byte[] html = result.getHtml().getBytes(UTF8);
+		byte[] css = result.getCss().getBytes(UTF8);
+		CRC32 crc = new CRC32();
+		crc.update(keyBytes);
+		crc.update(html);
+		crc.update(css);
+		ByteBuffer record = ByteBuffer.allocate(HEADER + keyBytes.length
+				+ html.length + css.length);
+		record.putInt(MAGIC).putInt(keyBytes.length).putInt(html.length)
+				.putInt(css.length).putLong(crc.getValue());
+		record.put(keyBytes).put(html).put(css);
+		record.flip();
+		return record;
+	}
+
+	/**
+	 * Returns the length of the record starting with the header, or -1 if
+	 * the header is damaged.
+	 */
+	private static int recordLength(ByteBuffer header) {
+		if (header.getInt(0) != MAGIC) {
+			return -1;
+		}
+		long length = HEADER + (long) header.getInt(4) + header.getInt(8)
+				+ header.getInt(12);
+		if (header.getInt(4) < 0 || header.getInt(8) < 0
+				|| header.getInt(12) < 0 || length > Integer.MAX_VALUE) {
+			return -1;
+		}
+		return (int) length;
+	}
+
+	/**
+	 * Decodes a record, or returns null if its checksum does not match.
+	 */
+	private static RichText2HtmlResult decode(ByteBuffer record, String[] key) {
+		if (recordLength(record) != record.remaining()) {
+			return null;
+		}
+		int keyLength = record.getInt(4);
+		int htmlLength = record.getInt(8);
+		int cssLength = record.getInt(12);
+		byte[] data = new byte[keyLength + htmlLength + cssLength];
+		record.position(HEADER);
+		record.get(data);
+		CRC32 crc = new CRC32();
+		crc.update(data);
+		if (crc.getValue() != record.getLong(16)) {
+			return null;
+		}
+		if (key != null) {
+			key[0] = new String(data, 0, keyLength, UTF8);
+		}
+		return new RichText2HtmlResult(new String(data, keyLength,
+				htmlLength, UTF8), new String(data, keyLength + htmlLength,
+				cssLength, UTF8));
+	}
+
+	private static ByteBuffer read(FileChannel channel, long offset,
+			int length) throws IOException {
+		ByteBuffer record = ByteBuffer.allocate(length);
+		if (!readFully(channel, record, offset)) {
+			return null;
+		}
+		record.flip();
+		return record;
+	}
+
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer,
+			long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, offset + buffer.position());
+			if (read < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer,
+			long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, offset + buffer.position());
+		}
+	}
+
+	private static final class Entry {
+
+		private final long offset;
+		private final int length;
+
+		private Entry(long offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+
+	}
+
+}
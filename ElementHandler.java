@@ -0,0 +1,37 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import org.w3c.dom.Node;
+
+/**
+ * Converts one DXL element during the DOM transform. Handlers are registered
+ * per element name on a {@link RichText2HtmlConverter}.
+ */
+public interface ElementHandler {
+
+	/**
+	 * Returns the node that replaces the element, the element itself to keep
+	 * it, or null to drop it. The returned node is transformed further, so
+	 * the element's children may simply be moved into it.
+	 */
+	Node convert(Node element, RichText2Html context) throws Exception;
+
+}
@@ -0,0 +1,120 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of conversion results, bounded by the memory
+ * the cached HTML and CSS take up. It can be shared by converters with the
+ * same element handlers, since the options are part of every key.
+ */
+public final class HtmlCache {
+
+	/** Rough per-entry overhead of the key, map entry and result objects. */
+	private static final int ENTRY_OVERHEAD = 128;
+
+	private final long maxBytes;
+	private final LinkedHashMap<String, RichText2HtmlResult> results = new LinkedHashMap<String, RichText2HtmlResult>(
+			16, 0.75f, true);
+	private long bytes;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public HtmlCache(long maxBytes) {
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("maxBytes must be positive");
+		}
+		this.maxBytes = maxBytes;
+	}
+
+	synchronized RichText2HtmlResult get(String key) {
+		RichText2HtmlResult result = results.get(key);
+		if (result == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return result;
+	}
+
+	synchronized void put(String key, RichText2HtmlResult result) {
+		long size = sizeOf(key, result);
+		if (size > maxBytes) {
+			return;
+		}
+		RichText2HtmlResult previous = results.put(key, result);
+		if (previous != null) {
+			bytes -= sizeOf(key, previous);
+		}
+		bytes += size;
+		Iterator<Map.Entry<String, RichText2HtmlResult>> eldest = results
+				.entrySet().iterator();
+		while (bytes > maxBytes) {
+			Map.Entry<String, RichText2HtmlResult> entry = eldest.next();
+			bytes -= sizeOf(entry.getKey(), entry.getValue());
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the estimated memory taken by the cached entries.
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public synchronized int size() {
+		return results.size();
+	}
+
+	public synchronized void clear() {
+		results.clear();
+		bytes = 0;
+	}
+
+	private static long sizeOf(String key, RichText2HtmlResult result) {
+		return ENTRY_OVERHEAD
+				+ 2L
+				* (key.length() + result.getHtml().length() + result.getCss()
+						.length());
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Writes a converted DOM tree as HTML in a single pass. Void elements such
+ * as br are written without an end tag, every other element with one, even
+ * if it is empty. Text is escaped through lookup tables; runs of characters
+ * that need no escaping are appended as they are.
+ */
+final class HtmlSerializer {
+
+	private static final String[] TEXT_ESCAPES = new String[128];
+	private static final String[] ATTRIBUTE_ESCAPES = new String[128];
+
+	static {
+		TEXT_ESCAPES['&'] = "&amp;";
+		TEXT_ESCAPES['<'] = "&lt;";
+		TEXT_ESCAPES['>'] = "&gt;";
+		System.arraycopy(TEXT_ESCAPES, 0, ATTRIBUTE_ESCAPES, 0, 128);
+		ATTRIBUTE_ESCAPES['"'] = "&quot;";
+	}
+
+	private HtmlSerializer() {
+	}
+
+	static boolean isVoidElement(String name) {
+		switch (name) {
+		case "area":
+		case "base":
+		case "br":
+		case "col":
+		case "embed":
+		case "hr":
+		case "img":
+		case "input":
+		case "link":
+		case "meta":
+		case "param":
+		case "source":
+		case "track":
+		case "wbr":
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the children of the node but not the node itself, e.g. to
+	 * leave out the body element wrapping the converted rich text.
+	 */
+	static void writeChildren(Node node, Appendable out) throws IOException {
+		for (Node child = node.getFirstChild(); child != null; child = child
+				.getNextSibling()) {
+			write(child, out);
+		}
+	}
+
+	static void write(Node node, Appendable out) throws IOException {
+		switch (node.getNodeType()) {
+		case Node.ELEMENT_NODE:
+			writeElement(node, out);
+			break;
+		case Node.TEXT_NODE:
+		case Node.CDATA_SECTION_NODE:
+			escape(node.getNodeValue(), TEXT_ESCAPES, out);
+			break;
+		case Node.COMMENT_NODE:
+			out.append("<!--").append(node.getNodeValue()).append("-->");
+			break;
+		case Node.ENTITY_REFERENCE_NODE:
+			out.append('&').append(node.getNodeName()).append(';');
+			break;
+		case Node.DOCUMENT_NODE:
+		case Node.DOCUMENT_FRAGMENT_NODE:
+			writeChildren(node, out);
+			break;
+		default:
+			break;
+		}
+	}
+
+	private static void writeElement(Node element, Appendable out)
+			throws IOException {
+		String name = element.getNodeName();
+		out.append('<').append(name);
+		NamedNodeMap attributes = element.getAttributes();
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Node attribute = attributes.item(i);
+			out.append(' ').append(attribute.getNodeName()).append("=\"");
+			escape(attribute.getNodeValue(), ATTRIBUTE_ESCAPES, out);
+			out.append('"');
+		}
+		out.append('>');
+		if (!element.hasChildNodes() && isVoidElement(name)) {
+			return;
+		}
+		writeChildren(element, out);
+		out.append("</").append(name).append('>');
+	}
+
+	/**
+	 * Writes a void element with the given attributes, as the streaming
+	 * converter writes it next to its XMLStreamWriter.
+	 */
+	static void writeVoidElement(String name, Map<String, String> attributes,
+			Appendable out) throws IOException {
+		out.append('<').append(name);
+		for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+			out.append(' ').append(attribute.getKey()).append("=\"");
+			escape(attribute.getValue(), ATTRIBUTE_ESCAPES, out);
+			out.append('"');
+		}
+		out.append('>');
+	}
+
+	private static void escape(String text, String[] escapes, Appendable out)
+			throws IOException {
+		if (text == null) {
+			return;
+		}
+		int start = 0;
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c < 128 && escapes[c] != null) {
+				out.append(text, start, i).append(escapes[c]);
+				start = i + 1;
+			}
+		}
+		out.append(text, start, length);
+	}
+
+}
@@ -0,0 +1,40 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Receives the images embedded in rich text. Without an image store,
+ * pictures are dropped from the HTML.
+ */
+public interface ImageStore {
+
+	/**
+	 * Stores the decoded image and returns the URL the img element refers
+	 * to. Identical images should be stored once and get the same URL.
+	 * 
+	 * @param format the DXL element holding the image: gif, jpeg or png
+	 * @param data the decoded image, read while the DXL is being decoded
+	 */
+	String store(String format, InputStream data) throws IOException;
+
+}
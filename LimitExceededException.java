@@ -0,0 +1,42 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import sirius.utils.domino.ConversionLimits.Limit;
+
+/**
+ * Aborts a conversion that ran out of one of its {@link ConversionLimits}.
+ */
+public class LimitExceededException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Limit limit;
+
+	LimitExceededException(Limit limit) {
+		super(limit.name());
+		this.limit = limit;
+	}
+
+	public Limit getLimit() {
+		return limit;
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import sirius.utils.domino.RichText2Html.ParDef;
+
+/**
+ * Compiled pardefs shared across conversions, keyed by the attributes that
+ * make up a pardef. Notes created from the same form carry the same pardefs,
+ * so a batch over one database compiles each of them only once. When the
+ * cache is full it is cleared and refilled with the pardefs in current use.
+ */
+public final class ParDefCache {
+
+	static final ParDefCache SHARED = new ParDefCache(4096);
+
+	private final ConcurrentMap<Key, ParDef> parDefs = new ConcurrentHashMap<Key, ParDef>();
+	private final int maxSize;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	public ParDefCache(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		this.maxSize = maxSize;
+	}
+
+	ParDef get(String list, String align, String leftMargin,
+			String spaceAfter, String newPage) {
+		Key key = new Key(list, align, leftMargin, spaceAfter, newPage);
+		ParDef def = parDefs.get(key);
+		if (def != null) {
+			hits.increment();
+			return def;
+		}
+		misses.increment();
+		def = ParDef.valueOf(list, align, leftMargin, spaceAfter, newPage);
+		if (parDefs.size() >= maxSize) {
+			parDefs.clear();
+		}
+		parDefs.put(key, def);
+		return def;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public int size() {
+		return parDefs.size();
+	}
+
+	public void clear() {
+		parDefs.clear();
+	}
+
+	private static final class Key {
+
+		private final String list;
+		private final String align;
+		private final String leftMargin;
+		private final String spaceAfter;
+		private final String newPage;
+		private final int hash;
+
+		private Key(String list, String align, String leftMargin,
+				String spaceAfter, String newPage) {
+			this.list = list;
+			this.align = align;
+			this.leftMargin = leftMargin;
+			this.spaceAfter = spaceAfter;
+			this.newPage = newPage;
+			int h = hash(list);
+			h = 31 * h + hash(align);
+			h = 31 * h + hash(leftMargin);
+			h = 31 * h + hash(spaceAfter);
+			this.hash = 31 * h + hash(newPage);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && equal(list, other.list)
+					&& equal(align, other.align)
+					&& equal(leftMargin, other.leftMargin)
+					&& equal(spaceAfter, other.spaceAfter)
+					&& equal(newPage, other.newPage);
+		}
+
+		private static int hash(String value) {
+			return value == null ? 0 : value.hashCode();
+		}
+
+		private static boolean equal(String a, String b) {
+			return a == null ? b == null : a.equals(b);
+		}
+
+	}
+
+}
@@ -0,0 +1,2134 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ * 
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import lotus.domino.DxlExporter;
+import lotus.domino.Item;
+import lotus.domino.NotesException;
+import lotus.domino.RichTextItem;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import sirius.utils.domino.ConversionLimits.Limit;
+import sirius.utils.domino.ConversionStats.Phase;
+import sirius.utils.domino.RichText2HtmlResult.Status;
+
+public class RichText2Html {
+
+	public static final int ALL_OPTIONS_OFF = 0;
+	public static final int USE_INLINE_STYLES = 1;
+	public static final int USE_CSS_CLASSES = 2;
+	
+	private static final String ATTRIBUTE_STYLE = "style";
+	private static final String ATTRIBUTE_CLASS = "class";
+	
+	private static final String ELEMENT_BOLD = "strong";
+	private static final String ELEMENT_ITALIC = "i";
+	private static final String ELEMENT_UNDERLINE = "u";
+	private static final String ELEMENT_STRIKETHROUGH = "del";
+	private static final String ELEMENT_SUPERSCRIPT = "sup";
+	private static final String ELEMENT_SUBSCRIPT = "sub";
+	
+	private final RichText2HtmlConverter converter;
+	private final Map<String, ElementHandler> handlers;
+	private Document dom;
+	private String richText;
+	private String plainText;
+	private RichText2HtmlResult result;
+	private final int options;
+	private StyleSheet styleSheet = new StyleSheet();
+	/** Names the classes of blocks converted separately, or null. */
+	private StyleSheet classNames;
+	private final ConversionListener listener;
+	private ConversionStats stats;
+	private Exception fallbackCause;
+	private final ConversionLimits limits;
+	private final long deadline;
+	private int depth;
+	private int tableCells;
+	private Limit truncatedBy;
+	/** The conversion a block of a parallel transform belongs to. */
+	private RichText2Html parent;
+	private Thread thread;
+
+	private Map<String, ParDef> parDefs;
+	 
+	RichText2Html(RichText2HtmlConverter converter, String richText,
+			String plainText) {
+		this.converter = converter;
+		this.handlers = converter.getHandlers();
+		this.richText = richText;
+		this.plainText = plainText;
+		this.options = converter.getOptions();
+		this.listener = converter.getListener();
+		this.limits = converter.getLimits();
+		this.deadline = getDeadline(limits);
+		if (listener != null) {
+			stats = new ConversionStats(null);
+		}
+	}
+
+	/**
+	 * Converts one block of the parent's rich text. It shares the pardefs,
+	 * the class names, the deadline and the table cell budget of the parent.
+	 */
+	private RichText2Html(RichText2Html parent) {
+		this.converter = parent.converter;
+		this.handlers = parent.handlers;
+		this.options = parent.options;
+		this.listener = null;
+		this.limits = parent.limits;
+		this.deadline = parent.deadline;
+		this.parDefs = parent.parDefs;
+		this.classNames = parent.classNames;
+		this.parent = parent;
+		if (parent.stats != null) {
+			stats = new ConversionStats(null);
+		}
+	}
+	
+	public RichText2Html(Item item) {
+		this(item, ALL_OPTIONS_OFF);
+	}
+	
+	public RichText2Html(Item item, int options) {
+		this(RichText2HtmlConverter.getInstance(options), item, null);
+	}
+
+	RichText2Html(RichText2HtmlConverter converter, Item item,
+			DxlExporter dxl) {
+		this.converter = converter;
+		this.handlers = converter.getHandlers();
+		this.options = converter.getOptions();
+		this.listener = converter.getListener();
+		this.limits = converter.getLimits();
+		this.deadline = getDeadline(limits);
+
+		try {
+			this.plainText = "";
+			if (listener != null) {
+				stats = new ConversionStats(item.getName());
+			}
+			this.plainText = getPlainText(item);
+
+			long start = startPhase();
+			String html = exportDxl(converter, item, dxl);
+			endPhase(Phase.EXPORT, start);
+			if (stats != null) {
+				stats.setInputLength(html.length());
+			}
+			checkInputLength(html.length());
+
+			start = startPhase();
+			html = trimDxl(html);
+			this.richText = this.plainText;
+			Node node = findRichText(loadDOM(html), item.getName());
+			if (node != null) {
+				this.dom = toRichTextDocument(node);
+			}
+			endPhase(Phase.LOAD, start);
+
+		} catch (Exception e) {
+			this.richText = this.plainText;
+			this.fallbackCause = e;
+		}
+	}
+
+	public String parse() {
+		return getResult().getStyledHtml();
+	}
+
+	public RichText2HtmlResult getResult() {
+		if (result == null) {
+			result = convert();
+		}
+		return result;
+	}
+
+	private RichText2HtmlResult convert() {
+		RichText2HtmlResult result;
+
+		try {
+			if (fallbackCause != null) {
+				// the export or DXL parse of the item failed
+				throw fallbackCause;
+			}
+			Document doc = dom;
+			if (doc == null) {
+				checkInputLength(richText.length());
+				long start = startPhase();
+				doc = loadDOM(richText);
+				endPhase(Phase.LOAD, start);
+				if (stats != null) {
+					stats.setInputLength(richText.length());
+				}
+			}
+			dom = null;
+			result = convert(doc);
+		} catch (Exception e) {
+			result = fallback(e);
+		}
+
+		report(result);
+		return result;
+	}
+
+	private RichText2HtmlResult convert(Document doc) throws Exception {
+		long start = startPhase();
+		loadParDefs(doc);
+		endPhase(Phase.PARDEFS, start);
+
+		int minBlocks = converter.getParallelMinBlocks();
+		if (minBlocks > 0) {
+			List<List<Node>> blocks = splitBlocks(doc.getDocumentElement(),
+					parDefs);
+			if (blocks.size() >= minBlocks && blocks.size() > 1) {
+				return convertParallel(blocks);
+			}
+		}
+
+		start = startPhase();
+		transform(doc.getDocumentElement());
+		endPhase(Phase.TRANSFORM, start);
+
+		start = startPhase();
+		String html = saveDOM(doc);
+		long maxLength = limits.getMaxOutputLength();
+		if (maxLength > 0 && html.length() > maxLength) {
+			html = truncate(doc, maxLength);
+			truncatedBy = Limit.OUTPUT_LENGTH;
+		}
+		endPhase(Phase.SERIALIZE, start);
+		return new RichText2HtmlResult(html, styleSheet.toCss(),
+				truncatedBy == null ? Status.COMPLETE : Status.TRUNCATED,
+				truncatedBy);
+	}
+
+	/**
+	 * Keeps the top-level nodes that fit into maxLength and serializes them
+	 * again.
+	 */
+	private String truncate(Document doc, long maxLength) throws Exception {
+		Node body = doc.getDocumentElement();
+		long length = 0;
+		Node node = body.getFirstChild();
+		while (node != null) {
+			if (node.getNodeType() == Node.ELEMENT_NODE) {
+				length += saveDOM(node).length();
+			} else if (node.getNodeType() == Node.COMMENT_NODE) {
+				length += node.getNodeValue().length() + 7;
+			} else {
+				length += getEscapedLength(node.getNodeValue());
+			}
+			if (length > maxLength) {
+				break;
+			}
+			node = node.getNextSibling();
+		}
+		while (node != null) {
+			Node next = node.getNextSibling();
+			body.removeChild(node);
+			node = next;
+		}
+		return body.hasChildNodes() ? saveDOM(doc) : "";
+	}
+
+	private static int getEscapedLength(String text) {
+		if (text == null) {
+			return 0;
+		}
+		int length = text.length();
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '&') {
+				length += 4;
+			} else if (c == '<' || c == '>') {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	private static long getDeadline(ConversionLimits limits) {
+		long timeout = limits.getTimeoutNanos();
+		return timeout > 0 ? System.nanoTime() + timeout : 0;
+	}
+
+	private void checkInputLength(long length) throws LimitExceededException {
+		long maxLength = limits.getMaxInputLength();
+		if (maxLength > 0 && length > maxLength) {
+			throw new LimitExceededException(Limit.INPUT_LENGTH);
+		}
+	}
+
+	/**
+	 * Called for every node transformed and every table row built, so a
+	 * conversion stops soon after its deadline or an interrupt.
+	 */
+	private void checkLimits() throws LimitExceededException {
+		if (deadline != 0 && System.nanoTime() - deadline > 0) {
+			throw new LimitExceededException(Limit.DEADLINE);
+		}
+		if (Thread.currentThread().isInterrupted() || parent != null
+				&& parent.thread.isInterrupted()) {
+			throw new LimitExceededException(Limit.INTERRUPTED);
+		}
+	}
+
+	private RichText2HtmlResult fallback(Exception cause) {
+		fallbackCause = cause;
+		if (cause instanceof LimitExceededException) {
+			return new RichText2HtmlResult(plainText, "", Status.ABORTED,
+					((LimitExceededException) cause).getLimit());
+		}
+		return new RichText2HtmlResult(plainText, "", Status.FAILED, null);
+	}
+
+	/**
+	 * Converts block by block, taking the HTML of every block whose
+	 * fingerprint appears in the previous snapshot instead of transforming
+	 * it again.
+	 */
+	RichText2HtmlSnapshot convert(RichText2HtmlSnapshot previous) {
+		RichText2HtmlSnapshot snapshot;
+
+		try {
+			if (previous != null && !previous.isCompatible(options, handlers)) {
+				previous = null;
+			}
+			checkInputLength(richText.length());
+			long start = startPhase();
+			Document doc = loadDOM(richText);
+			endPhase(Phase.LOAD, start);
+			if (stats != null) {
+				stats.setInputLength(richText.length());
+			}
+
+			start = startPhase();
+			loadParDefs(doc);
+			endPhase(Phase.PARDEFS, start);
+
+			// reused blocks keep their class names, so new ones are named
+			// by a copy of the previous names
+			classNames = previous == null ? new StyleSheet() : previous
+					.getClassNames().copy();
+			List<List<Node>> blocks = splitBlocks(doc.getDocumentElement(),
+					parDefs);
+			long[] fingerprints = new long[blocks.size()];
+			long[] lengths = new long[blocks.size()];
+			String[] html = new String[blocks.size()];
+			String[] css = new String[blocks.size()];
+			int reused = 0;
+			for (int i = 0; i < blocks.size(); i++) {
+				fingerprints[i] = fingerprint(blocks.get(i));
+				lengths[i] = getLength(blocks.get(i));
+				int index = previous == null ? -1 : previous.indexOf(
+						fingerprints[i], lengths[i]);
+				if (index >= 0) {
+					html[i] = previous.getHtml(index);
+					css[i] = previous.getCss(index);
+					reused++;
+				} else {
+					RichText2HtmlResult block = convertBlock(blocks.get(i));
+					html[i] = block.getHtml();
+					css[i] = block.getCss();
+				}
+			}
+			snapshot = new RichText2HtmlSnapshot(options, handlers,
+					classNames, fingerprints, lengths, html, css, reused);
+			long maxLength = limits.getMaxOutputLength();
+			if (maxLength > 0
+					&& snapshot.getResult().getHtml().length() > maxLength) {
+				int kept = 0;
+				long length = 0;
+				while (length + html[kept].length() <= maxLength) {
+					length += html[kept++].length();
+				}
+				snapshot = new RichText2HtmlSnapshot(options, handlers,
+						classNames, Arrays.copyOf(fingerprints, kept), Arrays
+								.copyOf(lengths, kept), Arrays.copyOf(html,
+								kept), Arrays.copyOf(css, kept), reused);
+				truncatedBy = Limit.OUTPUT_LENGTH;
+			}
+			if (truncatedBy != null) {
+				// truncated blocks must not be reused
+				RichText2HtmlResult truncated = snapshot.getResult();
+				snapshot = new RichText2HtmlSnapshot(options, handlers,
+						new RichText2HtmlResult(truncated.getHtml(), truncated
+								.getCss(), Status.TRUNCATED, truncatedBy));
+			}
+		} catch (Exception e) {
+			snapshot = new RichText2HtmlSnapshot(options, handlers,
+					fallback(e));
+		}
+
+		result = snapshot.getResult();
+		report(result);
+		return snapshot;
+	}
+
+	/**
+	 * Moves the nodes of one block into a document of their own and
+	 * converts them with a stylesheet of their own, named by classNames.
+	 */
+	RichText2HtmlResult convertBlock(List<Node> block) throws Exception {
+		return convertBlock(adoptBlock(block));
+	}
+
+	private Document adoptBlock(List<Node> block) throws Exception {
+		Document doc = converter.newDocument();
+		Node body = doc.appendChild(doc.createElement("body"));
+		for (Node node : block) {
+			body.appendChild(doc.adoptNode(node));
+		}
+		return doc;
+	}
+
+	private RichText2HtmlResult convertBlock(Document doc) throws Exception {
+		Node body = doc.getDocumentElement();
+		styleSheet = classNames == null ? new StyleSheet() : new StyleSheet(
+				classNames);
+
+		long start = startPhase();
+		transform(body);
+		endPhase(Phase.TRANSFORM, start);
+
+		start = startPhase();
+		String html = body.hasChildNodes() ? saveDOM(doc) : "";
+		endPhase(Phase.SERIALIZE, start);
+		return new RichText2HtmlResult(html, styleSheet.toCss());
+	}
+
+	/**
+	 * Transforms the blocks on the fork/join pool and joins their HTML in
+	 * document order. Consecutive blocks are grouped into a few tasks per
+	 * worker. Every task gets a document of its own, adopted here on the
+	 * calling thread, and a conversion of its own with its own stylesheet,
+	 * named by a stylesheet shared by all tasks.
+	 */
+	private RichText2HtmlResult convertParallel(List<List<Node>> blocks)
+			throws Exception {
+		long start = startPhase();
+		thread = Thread.currentThread();
+		ForkJoinPool pool = converter.getForkJoinPool();
+		int taskCount = Math.min(blocks.size(), pool.getParallelism() * 4);
+		if (classNames == null) {
+			classNames = new StyleSheet();
+		}
+		RichText2Html[] conversions = new RichText2Html[taskCount];
+		Document[] docs = new Document[taskCount];
+		List<Future<RichText2HtmlResult>> tasks = new ArrayList<Future<RichText2HtmlResult>>(
+				taskCount);
+		String[] html = new String[taskCount];
+		String[] css = new String[taskCount];
+		try {
+			for (int i = 0; i < taskCount; i++) {
+				List<Node> nodes = new ArrayList<Node>();
+				for (List<Node> block : blocks.subList(i * blocks.size()
+						/ taskCount, (i + 1) * blocks.size() / taskCount)) {
+					nodes.addAll(block);
+				}
+				RichText2Html conversion = new RichText2Html(this);
+				Document doc = conversion.adoptBlock(nodes);
+				conversions[i] = conversion;
+				docs[i] = doc;
+				tasks.add(pool.submit(() -> conversion.convertBlock(doc)));
+			}
+			for (int i = 0; i < taskCount; i++) {
+				RichText2HtmlResult block;
+				try {
+					block = tasks.get(i).get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new LimitExceededException(Limit.INTERRUPTED);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof Error) {
+						throw (Error) e.getCause();
+					}
+					throw (Exception) e.getCause();
+				}
+				html[i] = block.getHtml();
+				css[i] = block.getCss();
+				if (truncatedBy == null) {
+					truncatedBy = conversions[i].truncatedBy;
+				}
+				if (stats != null) {
+					stats.addElementCounts(conversions[i].stats);
+				}
+			}
+		} finally {
+			// blocks not started yet are not needed after a failure
+			for (Future<RichText2HtmlResult> task : tasks) {
+				task.cancel(false);
+			}
+		}
+		endPhase(Phase.TRANSFORM, start);
+
+		start = startPhase();
+		StringBuilder text = new StringBuilder();
+		long maxLength = limits.getMaxOutputLength();
+		for (int i = 0; i < taskCount; i++) {
+			if (maxLength > 0 && text.length() + html[i].length() > maxLength) {
+				text.append(conversions[i].truncate(docs[i], maxLength
+						- text.length()));
+				css = Arrays.copyOf(css, i + 1);
+				truncatedBy = Limit.OUTPUT_LENGTH;
+				break;
+			}
+			text.append(html[i]);
+		}
+		endPhase(Phase.SERIALIZE, start);
+		return new RichText2HtmlResult(text.toString(), StyleSheet.merge(css),
+				truncatedBy == null ? Status.COMPLETE : Status.TRUNCATED,
+				truncatedBy);
+	}
+
+	/**
+	 * Splits the children of body into blocks that transform independently
+	 * of each other. Every element starts a block, except a list paragraph
+	 * that continues the last list: it is grouped into the same list, so it
+	 * joins that list's block together with everything in between. Text
+	 * stays with the element before it.
+	 */
+	static List<List<Node>> splitBlocks(Node body, Map<String, ParDef> parDefs) {
+		List<List<Node>> blocks = new ArrayList<List<Node>>();
+		List<Node> block = null;
+		String listId = null;
+		int listBlock = -1;
+		for (Node node = body.getFirstChild(); node != null; node = node
+				.getNextSibling()) {
+			if (block == null || node.getNodeType() == Node.ELEMENT_NODE) {
+				String id = getListId(node, parDefs);
+				if (id != null && id.equals(listId)) {
+					block = blocks.get(listBlock);
+					List<List<Node>> between = blocks.subList(listBlock + 1,
+							blocks.size());
+					for (List<Node> nodes : between) {
+						block.addAll(nodes);
+					}
+					between.clear();
+				} else {
+					block = new ArrayList<Node>();
+					blocks.add(block);
+					if (id != null) {
+						listId = id;
+						listBlock = blocks.size() - 1;
+					}
+				}
+			}
+			block.add(node);
+		}
+		return blocks;
+	}
+
+	private static String getListId(Node node, Map<String, ParDef> parDefs) {
+		if (node.getNodeName() != "par") {
+			return null;
+		}
+		String id = getAttribute(node.getAttributes(), "def");
+		ParDef def = id == null ? null : parDefs.get(id);
+		return def != null && def.kind == ParDef.LIST ? id : null;
+	}
+
+	/**
+	 * Hashes the DXL of a block together with the pardefs its paragraphs
+	 * reference, so editing a pardef changes the fingerprint of every block
+	 * using it.
+	 */
+	long fingerprint(List<Node> block) {
+		long hash = 0xcbf29ce484222325L;
+		for (Node node : block) {
+			hash = fingerprint(hash, node);
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns the number of nodes and characters of a block, which must
+	 * match as well as the fingerprint for a block to be reused.
+	 */
+	static long getLength(List<Node> block) {
+		long length = 0;
+		for (Node node : block) {
+			length += getLength(node);
+		}
+		return length;
+	}
+
+	private static long getLength(Node node) {
+		long length = 1;
+		if (node.getNodeValue() != null) {
+			length += node.getNodeValue().length();
+		}
+		NamedNodeMap attrs = node.getAttributes();
+		if (attrs != null) {
+			for (int i = 0; i < attrs.getLength(); i++) {
+				length += 1 + attrs.item(i).getNodeValue().length();
+			}
+		}
+		for (Node child = node.getFirstChild(); child != null; child = child
+				.getNextSibling()) {
+			length += getLength(child);
+		}
+		return length;
+	}
+
+	private long fingerprint(long hash, Node node) {
+		hash = mix(hash, node.getNodeType());
+		hash = mix(hash, node.getNodeName());
+		hash = mix(hash, node.getNodeValue());
+		NamedNodeMap attrs = node.getAttributes();
+		if (attrs != null) {
+			hash = mix(hash, attrs.getLength());
+			for (int i = 0; i < attrs.getLength(); i++) {
+				hash = mix(hash, attrs.item(i).getNodeName());
+				hash = mix(hash, attrs.item(i).getNodeValue());
+			}
+			if (node.getNodeName() == "par") {
+				ParDef def = parDefs.get(getAttribute(attrs, "def"));
+				if (def != null) {
+					hash = mix(hash, def.kind);
+					hash = mix(hash, def.style);
+					hash = mix(hash, def.leftMargin);
+					hash = mix(hash, def.align);
+					hash = mix(hash, def.spaceAfter);
+					hash = mix(hash, def.newPage);
+				}
+			}
+		}
+		for (Node child = node.getFirstChild(); child != null; child = child
+				.getNextSibling()) {
+			hash = fingerprint(hash, child);
+		}
+		return mix(hash, -1);
+	}
+
+	private static long mix(long hash, String value) {
+		if (value == null) {
+			return mix(hash, -2);
+		}
+		hash = mix(hash, value.length());
+		for (int i = 0; i < value.length(); i++) {
+			hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	private static long mix(long hash, int value) {
+		return (hash ^ value) * 0x100000001b3L;
+	}
+
+	boolean isFallback() {
+		return fallbackCause != null;
+	}
+
+	private long startPhase() {
+		return stats == null ? 0 : System.nanoTime();
+	}
+
+	private void endPhase(Phase phase, long start) {
+		if (stats != null) {
+			stats.add(phase, start);
+		}
+	}
+
+	private void report(RichText2HtmlResult result) {
+		if (stats != null) {
+			stats.setStatus(result.getStatus(), result.getLimit());
+		}
+		report(result.getStyledHtml());
+	}
+
+	private void report(String html) {
+		if (stats == null) {
+			return;
+		}
+		stats.setOutputLength(html.length());
+		if (fallbackCause == null) {
+			listener.converted(stats);
+		} else {
+			if (fallbackCause instanceof LimitExceededException) {
+				stats.setStatus(Status.ABORTED,
+						((LimitExceededException) fallbackCause).getLimit());
+			} else {
+				stats.setStatus(Status.FAILED, null);
+			}
+			listener.fellBack(stats, fallbackCause);
+		}
+	}
+
+	private void loadParDefs(Document doc) throws Exception {
+		parDefs = new HashMap<String, ParDef>();
+		NodeList nodes = doc.getElementsByTagName("pardef");
+		for (int i = nodes.getLength() - 1; i >= 0; i--) {
+			Node node = nodes.item(i);
+			NamedNodeMap attrs = node.getAttributes();
+			Node attr = attrs.getNamedItem("id");
+			if (attr != null) {
+				String id = attr.getNodeValue();
+				ParDef def = converter.getParDefCache().get(
+						getAttribute(attrs, "list"), getAttribute(attrs, "align"),
+						getAttribute(attrs, "leftmargin"), getAttribute(attrs,
+								"spaceafter"), getAttribute(attrs, "newpage"));
+
+				parDefs.put(id, def);
+
+				node.getParentNode().removeChild(node);
+			}
+		}
+
+	}
+
+	private void transform(Node parent) throws Exception {
+		int maxDepth = limits.getMaxDepth();
+		if (maxDepth > 0 && depth >= maxDepth) {
+			if (parent.hasChildNodes()) {
+				truncatedBy = Limit.DEPTH;
+				while (parent.hasChildNodes()) {
+					parent.removeChild(parent.getFirstChild());
+				}
+			}
+			return;
+		}
+		depth++;
+		try {
+			transformChildren(parent);
+		} finally {
+			depth--;
+		}
+	}
+
+	private void transformChildren(Node parent) throws Exception {
+		NodeList children;
+		Node curNode;
+		NamedNodeMap attrs;
+		Node attr;
+		ParDef def;
+		Node newNode = null;
+		Node child;
+		String id;
+		String prvId = "";
+		Node prvNode = null;
+
+		children = parent.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			checkLimits();
+			curNode = children.item(i);
+			if (stats != null && curNode.getNodeType() == Node.ELEMENT_NODE
+					&& (curNode.getNodeName() == "par" || handlers
+							.containsKey(curNode.getNodeName()))) {
+				stats.count(curNode.getNodeName());
+			}
+			if (curNode.getNodeName() == "par") {
+				attrs = curNode.getAttributes();
+				attr = attrs.getNamedItem("def");
+				id = attr.getNodeValue();
+				def = parDefs.get(id);
+				if (def.kind == ParDef.LIST) {
+					if (prvId.equals(id)) {
+						newNode = prvNode;
+					} else {
+						newNode = createList(curNode, def);
+						prvId = id;
+						prvNode = newNode;
+					}
+					child = parent.getOwnerDocument().createElement("li");
+					newNode.appendChild(child);
+					moveChildren(curNode, child);
+				}
+				if (def.kind == ParDef.PARAGRAPH) {
+					newNode = createParagraph(curNode, def);
+					moveChildren(curNode, newNode);
+				}
+				parent.replaceChild(newNode, curNode);
+				if (children.item(i) != newNode) {
+					// a continued list moved down from an earlier position
+					i--;
+				}
+			} else if (curNode.getNodeType() == Node.ELEMENT_NODE) {
+				ElementHandler handler = handlers.get(curNode.getNodeName());
+				if (handler != null) {
+					newNode = handler.convert(curNode, this);
+					if (newNode == null) {
+						parent.removeChild(curNode);
+						i--;
+					} else if (newNode != curNode) {
+						parent.replaceChild(newNode, curNode);
+					}
+				}
+			}
+		}
+
+		children = parent.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			curNode = children.item(i);
+			transform(curNode);
+		}
+	}
+
+	private Node convertTable(Node node) throws LimitExceededException {
+		Node center = node.getParentNode();
+		if (center != null && center.getNodeName() == "center") {
+			Node attrNode = center.getAttributes().getNamedItem("table");
+			if (attrNode != null && "true".equals(attrNode.getNodeValue())) {
+				return node;
+			}
+		}
+		return createTable(node);
+	}
+
+	private Node createTable(Node node) throws LimitExceededException {
+		Node center = null;
+		Node tag = node.getOwnerDocument().createElement("table");
+
+		Attr attr = node.getOwnerDocument().createAttribute("cellspacing");
+		attr.setNodeValue("0");
+		tag.getAttributes().setNamedItem(attr);
+		attr = node.getOwnerDocument().createAttribute("cellpadding");
+		attr.setNodeValue("0");
+		tag.getAttributes().setNamedItem(attr);
+
+		TableLayout layout = new TableLayout(getAttribute(node.getAttributes(),
+				"cellbordercolor"), getAttribute(node.getAttributes(),
+				"cellborderstyle"));
+		String widthType = "";
+		String refWidth = "";
+		Node attrNode = node.getAttributes().getNamedItem("widthtype");
+		if (attrNode != null) {
+			widthType = attrNode.getNodeValue();
+		}
+		attrNode = node.getAttributes().getNamedItem("refwidth");
+		if (attrNode != null) {
+			refWidth = attrNode.getNodeValue();
+		}
+		if (widthType.equals("fixedcenter")) {
+			center = node.getOwnerDocument().createElement("center");
+			attr = node.getOwnerDocument().createAttribute("table");
+			attr.setNodeValue("true");
+			center.getAttributes().setNamedItem(attr);
+			center.appendChild(tag);
+		}
+		String style = getTableStyle(widthType, refWidth, getAttribute(node
+				.getAttributes(), "leftmargin"));
+
+		setStyle(tag, style);
+
+		for (Node child = node.getFirstChild(); child != null; child = child
+				.getNextSibling()) {
+			if (child.getNodeName() == "tablecolumn") {
+				layout.addColumn(getAttribute(child.getAttributes(), "width"));
+			} else if (child.getNodeName() == "tablerow") {
+				layout.rowCount++;
+			}
+		}
+		int rowNo = 0;
+		for (Node child = node.getFirstChild(); child != null; child = child
+				.getNextSibling()) {
+			if (child.getNodeName() == "tablerow") {
+				checkLimits();
+				if (!reserveTableCells(child, layout, rowNo + 1)) {
+					truncatedBy = Limit.TABLE_CELLS;
+					break;
+				}
+				tag.appendChild(createTableRow(child, layout, ++rowNo));
+				layout.release(rowNo);
+			}
+		}
+
+		if (center == null) {
+			return tag;
+		} else {
+			return center;
+		}
+	}
+
+	/**
+	 * Counts the cells of the row, and the cells their spans cover, against
+	 * the cell budget and returns false if they exceed it.
+	 */
+	private boolean reserveTableCells(Node row, TableLayout layout, int rowNo) {
+		int maxCells = limits.getMaxTableCells();
+		if (maxCells == 0) {
+			return true;
+		}
+		long cells = 0;
+		for (Node child = row.getFirstChild(); child != null; child = child
+				.getNextSibling()) {
+			if (child.getNodeName() == "tablecell") {
+				NamedNodeMap attrs = child.getAttributes();
+				int rowspan = Math.min(layout.getRowspan(getAttribute(attrs,
+						"rowspan")), layout.rowCount - rowNo + 1);
+				// the column is not known yet; assume the widest span
+				int colspan = layout.getColspan(1, getAttribute(attrs,
+						"columnspan"));
+				cells += (long) rowspan * colspan;
+			}
+		}
+		return parent == null ? reserveTableCells(cells, maxCells) : parent
+				.reserveTableCells(cells, maxCells);
+	}
+
+	/**
+	 * Synchronized as the blocks of a parallel transform share the budget of
+	 * their parent.
+	 */
+	private synchronized boolean reserveTableCells(long cells, int maxCells) {
+		if (tableCells + cells > maxCells) {
+			return false;
+		}
+		tableCells += cells;
+		return true;
+	}
+
+	private Node createTableRow(Node node, TableLayout layout, int rowNo) {
+		Node tag = node.getOwnerDocument().createElement("tr");
+
+		int colNo = 0;
+		Node next;
+		for (Node child = node.getFirstChild(); child != null; child = next) {
+			next = child.getNextSibling();
+			if (child.getNodeName() == "tablecell") {
+				colNo = layout.nextFreeColumn(rowNo, colNo + 1);
+				tag.appendChild(createTableCell(child, layout, rowNo, colNo));
+			}
+		}
+
+		return tag;
+	}
+
+	private Node createTableCell(Node node, TableLayout layout, int rowNo,
+			int colNo) {
+		Node tag = node.getOwnerDocument().createElement("td");
+
+		Attr attr;
+		String borderWidth = "";
+		int rowspan = 1;
+		int colspan = 1;
+
+		Node attrNode = node.getAttributes().getNamedItem("rowspan");
+		if (attrNode != null) {
+			attr = node.getOwnerDocument().createAttribute("rowspan");
+			attr.setNodeValue(attrNode.getNodeValue());
+			tag.getAttributes().setNamedItem(attr);
+			// all rows are known here, so the span ends with the table
+			rowspan = Math.min(layout.getRowspan(attrNode.getNodeValue()),
+					layout.rowCount - rowNo + 1);
+		}
+		attrNode = node.getAttributes().getNamedItem("columnspan");
+		if (attrNode != null) {
+			attr = node.getOwnerDocument().createAttribute("colspan");
+			attr.setNodeValue(attrNode.getNodeValue());
+			tag.getAttributes().setNamedItem(attr);
+			colspan = layout.getColspan(colNo, attrNode.getNodeValue());
+		}
+		layout.span(rowNo, colNo, rowspan, colspan);
+
+		attrNode = node.getAttributes().getNamedItem("borderwidth");
+		if (attrNode != null) {
+			borderWidth = attrNode.getNodeValue();
+		}
+		String style = getCellStyle(borderWidth, layout.borderStyle,
+				layout.borderColor, layout.isLastRow(rowNo, rowspan), layout
+						.isLastCell(colNo, colspan), layout
+						.getColumnWidth(colNo));
+
+		setStyle(tag, style);
+
+		moveChildren(node, tag);
+
+		return tag;
+	}
+
+	private Node createActionHotspot(Node node) {
+		Node tag = node.getOwnerDocument().createElement("span");
+
+		String style = "";
+		String hotspotstyle = "";
+
+		Node attrNode = node.getAttributes().getNamedItem("hotspotstyle");
+		if (attrNode != null) {
+			hotspotstyle = attrNode.getNodeValue();
+		}
+
+		if (!hotspotstyle.equals("none")) {
+			style += "border:solid 1px teal;";
+		}
+
+		setStyle(tag, style);
+
+		moveChildren(node, tag);
+
+		return tag;
+	}
+
+	private Node createButton(Node node) {
+		Node tag;
+		Attr attr;
+		Node attrNode;
+		String text = "";
+		String width = "";
+		String widthType = "";
+		String style = "";
+
+		tag = node.getOwnerDocument().createElement("input");
+
+		attr = node.getOwnerDocument().createAttribute("type");
+		attr.setNodeValue("button");
+		tag.getAttributes().setNamedItem(attr);
+
+		NodeList children = node.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			Node child = children.item(i);
+			if (child.getNodeName() == "code")
+				continue;
+			if (child.getNodeValue() != null) {
+				text += child.getNodeValue();
+			}
+		}
+
+		attr = node.getOwnerDocument().createAttribute("value");
+		attr.setNodeValue(text);
+		tag.getAttributes().setNamedItem(attr);
+
+		attrNode = node.getAttributes().getNamedItem("width");
+		if (attrNode != null) {
+			width = attrNode.getNodeValue();
+		}
+		attrNode = node.getAttributes().getNamedItem("widthtype");
+		if (attrNode != null) {
+			widthType = attrNode.getNodeValue();
+		}
+		if (widthType.equals("fitcontent")) {
+			width = "auto";
+		}
+
+		if (width.length() > 0) {
+			style += "width:" + width + ";";
+		}
+
+		setStyle(tag, style);
+
+		return tag;
+	}
+
+	private Node createPopup(Node node) {
+		Node tag = node.getOwnerDocument().createElement("span");
+
+		Random random = new Random();
+		String popupId = Long.toString(Math.abs(random.nextLong()), 36);
+
+		Attr attr;
+		String style = "cursor:pointer;cursor:hand;";
+
+		Node title = node.getOwnerDocument().createElement("span");
+		tag.appendChild(title);
+
+		Node cover = node.getOwnerDocument().createElement("span");
+		tag.appendChild(cover);
+		attr = node.getOwnerDocument().createAttribute("id");
+		attr.setNodeValue(popupId);
+		cover.getAttributes().setNamedItem(attr);
+		applyStyle(cover,
+				"display:none;margin: 10px;border:solid 1px teal;width:300px;height:50px;");
+
+		Node next;
+		for (Node child = node.getFirstChild(); child != null; child = next) {
+			next = child.getNextSibling();
+			if (child.getNodeName() == "popuptext") {
+				moveChildren(child, cover);
+			} else if (child.getNodeName() != "code") {
+				title.appendChild(child);
+			}
+		}
+
+		NamedNodeMap attrs = node.getAttributes();
+		Node attrNode = attrs.getNamedItem("hotspotstyle");
+		if (attrNode != null) {
+			String kind = attrNode.getNodeValue();
+			if (kind.equals("highlight")) {
+				style += "background-color:Lemonchiffon;";
+			} else if (kind.equals("none")) {
+			} else {
+				style += "border:solid 1px teal;";
+			}
+		} else {
+			style += "border:solid 1px teal;";
+		}
+		setStyle(title, style);
+		
+		attrNode = attrs.getNamedItem("show");
+		String event = "onmouseover";
+		if (attrNode != null) {
+			String kind = attrNode.getNodeValue();
+			if (kind.equals("onclick")) {
+				event = "onclick";
+			}
+		}
+		attr = node.getOwnerDocument().createAttribute(event);
+		attr.setNodeValue("var cover=document.getElementById('" + popupId
+				+ "');cover.style.display='block';");
+		title.getAttributes().setNamedItem(attr);
+		attr = node.getOwnerDocument().createAttribute("onmouseout");
+		attr.setNodeValue("var cover=document.getElementById('" + popupId
+				+ "');cover.style.display='none';");
+		title.getAttributes().setNamedItem(attr);
+
+		return tag;
+	}
+
+	private Node createUrlLink(Node node) {
+		Node tag = node.getOwnerDocument().createElement("a");
+
+		Attr attr;
+		String style = "";
+		NamedNodeMap attrs = node.getAttributes();
+		Node attrNode = attrs.getNamedItem("href");
+		if (attrNode != null) {
+			attr = node.getOwnerDocument().createAttribute("href");
+			attr.setNodeValue(attrNode.getNodeValue());
+			tag.getAttributes().setNamedItem(attr);
+		}
+		
+		attrNode = attrs.getNamedItem("targetframe");
+		if (attrNode != null) {
+			attr = node.getOwnerDocument().createAttribute("target");
+			attr.setNodeValue(attrNode.getNodeValue());
+			tag.getAttributes().setNamedItem(attr);
+		}
+		
+		attrNode = attrs.getNamedItem("showborder");
+		if (attrNode != null) {
+			if (attrNode.getNodeValue().equals("true")) {
+				style += "border:solid 1px teal;";
+			}
+		}
+		
+		setStyle(tag, style);
+		
+		Node next;
+		for (Node child = node.getFirstChild(); child != null; child = next) {
+			next = child.getNextSibling();
+			if (child.getNodeName() == "code"){
+				NodeList codeChildren = child.getChildNodes();
+				for (int j = 0; j < codeChildren.getLength(); j++) {
+					Node codeChild = codeChildren.item(j);
+					if (codeChild.getNodeName() == "formula"){
+						Node formulaNode = codeChild.getFirstChild();
+						if (null != formulaNode) {
+							String formula = formulaNode.getTextContent().toLowerCase();
+							attr = node.getOwnerDocument().createAttribute("href");
+							
+							String res = formula.replace("\"", "");
+							attr.setNodeValue(res);
+							
+							tag.getAttributes().setNamedItem(attr);
+						}
+					}
+				}
+				continue;
+			}
+			tag.appendChild(child);
+		}
+
+		return tag;
+	}
+
+	private Node createSection(Node node) {
+		Node tag = node.getOwnerDocument().createElement("div");
+
+		Random random = new Random();
+		String coverId = Long.toString(Math.abs(random.nextLong()), 36);
+
+		Node secTitle = node.getFirstChild().getNextSibling().getFirstChild()
+				.getNextSibling().getFirstChild();
+		Node title = node.getOwnerDocument().createElement("div");
+		Node content = node.getOwnerDocument().createTextNode(
+				secTitle.getNodeValue());
+		title.appendChild(content);
+		applyStyle(title,
+				"padding-left:5px;border-left:solid 5px teal;border-bottom:solid 1px teal;cursor:pointer;cursor:hand;");
+		Attr attr = node.getOwnerDocument().createAttribute("onclick");
+		attr
+				.setNodeValue("var sec=document.getElementById('"
+						+ coverId
+						+ "');if(sec.style.display=='none'){sec.style.display='block'}else{sec.style.display='none'}");
+		title.getAttributes().setNamedItem(attr);
+		tag.appendChild(title);
+
+		Node cover = node.getOwnerDocument().createElement("div");
+		attr = node.getOwnerDocument().createAttribute("id");
+		attr.setNodeValue(coverId);
+		cover.getAttributes().setNamedItem(attr);
+		attr = node.getOwnerDocument().createAttribute(ATTRIBUTE_STYLE);
+		attr.setNodeValue("display:none;");
+		cover.getAttributes().setNamedItem(attr);
+		tag.appendChild(cover);
+
+		moveSiblings(node.getChildNodes().item(2), cover);
+		cover.appendChild(node.getOwnerDocument().createElement("br"));
+
+		return tag;
+	}
+
+	private Node createRule(Node node) {
+		Node tag = node.getOwnerDocument().createElement("hr");
+		NamedNodeMap attrs = node.getAttributes();
+		String style = getRuleStyle(getAttribute(attrs, "height"), getAttribute(
+				attrs, "width"), getAttribute(attrs, "color"));
+
+		setStyle(tag, style);
+
+		return tag;
+	}
+
+	/**
+	 * Decodes the first gif, jpeg or png payload of the picture straight
+	 * from the DXL text into the image store.
+	 */
+	private Node createPicture(Node node) throws Exception {
+		ImageStore imageStore = converter.getImageStore();
+		if (imageStore == null) {
+			return null;
+		}
+		for (Node child = node.getFirstChild(); child != null; child = child
+				.getNextSibling()) {
+			if (isImageFormat(child.getNodeName())) {
+				child.normalize();
+				Node text = child.getFirstChild();
+				String src = imageStore.store(child.getNodeName(), Base64
+						.getMimeDecoder().wrap(
+								new CharSequenceInputStream(text == null ? ""
+										: text.getNodeValue())));
+
+				Node tag = node.getOwnerDocument().createElement("img");
+				NamedNodeMap attrs = node.getAttributes();
+				setAttribute(tag, "src", src);
+				setAttribute(tag, "width", getPixels(getAttribute(attrs,
+						"width")));
+				setAttribute(tag, "height", getPixels(getAttribute(attrs,
+						"height")));
+				setAttribute(tag, "alt", getAttribute(attrs, "alttext"));
+				return tag;
+			}
+		}
+		return null;
+	}
+
+	private void setAttribute(Node tag, String name, String value) {
+		if (value != null) {
+			Attr attr = tag.getOwnerDocument().createAttribute(name);
+			attr.setNodeValue(value);
+			tag.getAttributes().setNamedItem(attr);
+		}
+	}
+
+	static boolean isImageFormat(String name) {
+		return name.equals("gif") || name.equals("jpeg") || name.equals("png");
+	}
+
+	/**
+	 * Returns the number of a DXL length given in pixels, or null for any
+	 * other length.
+	 */
+	static String getPixels(String length) {
+		if (length == null || !length.endsWith("px")) {
+			return null;
+		}
+		String pixels = length.substring(0, length.length() - 2);
+		for (int i = 0; i < pixels.length(); i++) {
+			if (!Character.isDigit(pixels.charAt(i))) {
+				return null;
+			}
+		}
+		return pixels.length() > 0 ? pixels : null;
+	}
+
+	private Node createRun(Node node) {
+		Node tag = null;
+		NamedNodeMap attrs;
+		Node attrNode;
+		Node newNode = null;
+		String style = "";
+		
+		attrs = node.getAttributes();
+		attrNode = attrs.getNamedItem("html");
+		if (attrNode != null) {
+			if (attrNode.getNodeValue().equals("true")) {
+				newNode = node.getOwnerDocument().createElement("code");
+				style += getHighlightStyle(getAttribute(attrs, "highlight"), true);
+			}
+		}
+		if (newNode == null) {
+			attrNode = attrs.getNamedItem("highlight");
+			if (attrNode != null) {
+				newNode = node.getOwnerDocument().createElement("span");
+				style += getHighlightStyle(attrNode.getNodeValue(), false);
+			}
+		}
+
+		if (node.getChildNodes().getLength() < 2) {
+			if (newNode == null) {
+				newNode = node.getOwnerDocument().createElement("span");
+			}
+			setStyle(newNode, style);
+			moveChildren(node, newNode);
+			tag = newNode;
+		} else {
+			Node font = node.getFirstChild();
+			if (font.getNodeName() != "font") {
+				if (newNode == null) {
+					newNode = node.getOwnerDocument().createElement("span");
+				}
+				setStyle(newNode, style);
+				moveChildren(node, newNode);
+				tag = newNode;
+			} else {
+				attrs = font.getAttributes();
+				attrNode = attrs.getNamedItem(ATTRIBUTE_STYLE);
+				Node inner = node.getOwnerDocument().createTextNode(node.getTextContent());
+				Node styleNode = null;
+				if (attrNode != null) {
+					String fontStyle = attrNode.getNodeValue();
+					
+					if (fontStyle.indexOf("italic") >= 0) {
+						styleNode = node.getOwnerDocument().createElement(ELEMENT_ITALIC);
+						styleNode.appendChild(inner);
+						inner = styleNode;
+						
+						style += "font-style:italic;";
+					}
+					
+					if (fontStyle.indexOf("bold") >= 0) {
+						styleNode = node.getOwnerDocument().createElement(ELEMENT_BOLD);
+						styleNode.appendChild(inner);
+						inner = styleNode;
+						
+						style += "font-weight:bold;";
+					}
+					
+					if (fontStyle.indexOf("underline") >= 0) {
+						styleNode = node.getOwnerDocument().createElement(ELEMENT_UNDERLINE);
+						styleNode.appendChild(inner);
+						inner = styleNode;
+					}
+					
+					if (fontStyle.indexOf("strikethrough") >= 0) {
+						styleNode = node.getOwnerDocument().createElement(ELEMENT_STRIKETHROUGH);
+						styleNode.appendChild(inner);
+						inner = styleNode;
+					}
+					
+					if (fontStyle.indexOf("superscript") >= 0) {
+						styleNode = node.getOwnerDocument().createElement(ELEMENT_SUPERSCRIPT);
+						styleNode.appendChild(inner);
+						inner = styleNode;
+					}
+					
+					if (fontStyle.indexOf("subscript") >= 0) {
+						styleNode = node.getOwnerDocument().createElement(ELEMENT_SUBSCRIPT);
+						styleNode.appendChild(inner);
+						inner = styleNode;
+					}
+					
+					// TODO: Not implemented in html tags: emboss, shadow, extrude
+
+					if (fontStyle.indexOf("emboss") >= 0) {
+						if (null == styleNode) styleNode = inner;
+					}
+					
+					if (fontStyle.indexOf("shadow") >= 0) {
+						if (null == styleNode) styleNode = inner;
+					}
+					
+					if (fontStyle.indexOf("extrude") >= 0) {
+						if (null == styleNode) styleNode = inner;
+					}
+				}
+				
+				attrNode = attrs.getNamedItem("color");
+				if (attrNode != null) {
+					if (null == styleNode) styleNode = inner;
+					style += "color:" + attrNode.getNodeValue() + ";";
+				}
+				attrNode = attrs.getNamedItem("size");
+				if (attrNode != null) {
+					if (null == styleNode) styleNode = inner;
+					style += "font-size:" + attrNode.getNodeValue() + ";";
+				}
+				attrNode = attrs.getNamedItem("name");
+				if (attrNode != null) {
+					if (null == styleNode) styleNode = inner;
+					style += "font-family:" + attrNode.getNodeValue() + ";";
+				}
+
+				if (null != styleNode)
+					if (newNode == null) 
+						newNode = styleNode;
+					else
+						newNode.appendChild(styleNode);
+				
+				setStyle(newNode, style);
+				
+				moveSiblings(node.getChildNodes().item(2), newNode);
+				tag = newNode;
+			}
+		}
+
+		return tag;
+	}
+
+	private Node createParagraph(Node node, ParDef def) {
+		boolean hasContent = node.getFirstChild() != null;
+		Node tag = node.getOwnerDocument().createElement(
+				def.getTag(hasContent, isUseStyles()));
+		setStyle(tag, def.getStyle(hasContent));
+		return tag;
+	}
+
+	private Node createList(Node node, ParDef def) {
+		Node tag = node.getOwnerDocument().createElement(def.tag);
+		setStyle(tag, def.contentStyle);
+		return tag;
+	}
+
+	private static void moveChildren(Node from, Node to) {
+		moveSiblings(from.getFirstChild(), to);
+	}
+
+	private static void moveSiblings(Node first, Node to) {
+		Node next;
+		for (Node child = first; child != null; child = next) {
+			next = child.getNextSibling();
+			to.appendChild(child);
+		}
+	}
+
+	static String getTableStyle(String widthType, String refWidth,
+			String leftMargin) {
+		String style = "";
+		String tableWidth = "";
+		if (widthType.equals("fitmargins")) {
+			tableWidth = "100%";
+		} else if (widthType.equals("fitwindow")) {
+			tableWidth = "100%";
+		} else if (widthType.equals("fixedleft")) {
+			tableWidth = refWidth;
+			style += "float:left;";
+		} else if (widthType.equals("fixedright")) {
+			tableWidth = refWidth;
+			style += "float:right;";
+		} else if (widthType.equals("fixedcenter")) {
+			tableWidth = refWidth;
+		}
+		if (tableWidth.length() > 0) {
+			style += "width:" + tableWidth + ";";
+		}
+		if (leftMargin != null) {
+			double margin = 0;
+			try {
+				margin = Double.parseDouble(leftMargin.replace("in", ""));
+				margin -= 1;
+				if (margin < 0)
+					margin = 0;
+			} catch (Exception e) {
+				margin = 0;
+			}
+			if (widthType.equals("fitmargins")) {
+				style += "margin-left:" + margin + "in";
+			}
+		}
+		return style;
+	}
+
+	static String getCellStyle(String borderWidth, String borderStyle,
+			String borderColor, boolean lastRow, boolean lastCell,
+			String cellWidth) {
+		String style = "";
+		if (borderWidth.length() > 0) {
+			String[] fields = borderWidth.split(" ");
+			if (fields.length > 0) {
+				style += "border-top:" + borderStyle + " " + fields[0] + " "
+						+ borderColor + ";";
+			} else {
+				style += "border-top:" + borderStyle + " 1px " + borderColor
+						+ ";";
+			}
+			if (fields.length > 1) {
+				if (lastCell) {
+					style += "border-right:" + borderStyle + " " + fields[1]
+							+ " " + borderColor + ";";
+				}
+			} else {
+				style += "border-right:" + borderStyle + " 1px " + borderColor
+						+ ";";
+			}
+			if (fields.length > 2) {
+				if (lastRow) {
+					style += "border-bottom:" + borderStyle + " " + fields[2]
+							+ " " + borderColor + ";";
+				}
+			} else {
+				style += "border-bottom:" + borderStyle + " 1px " + borderColor
+						+ ";";
+			}
+			if (fields.length > 3) {
+				style += "border-left:" + borderStyle + " " + fields[3] + " "
+						+ borderColor + ";";
+			} else {
+				style += "border-left:" + borderStyle + " 1px " + borderColor
+						+ ";";
+			}
+		} else {
+			style += "border-top:" + borderStyle + " 1px " + borderColor + ";";
+			style += "border-left:" + borderStyle + " 1px " + borderColor + ";";
+			if (lastRow) {
+				style += "border-bottom:" + borderStyle + " 1px " + borderColor
+						+ ";";
+			}
+			if (lastCell) {
+				style += "border-right:" + borderStyle + " 1px " + borderColor
+						+ ";";
+			}
+		}
+
+		if (cellWidth != null && cellWidth.length() > 0) {
+			style += "width:" + cellWidth + ";";
+		}
+		return style;
+	}
+
+	static String getRuleStyle(String height, String width, String color) {
+		String style = "";
+		if (height != null) {
+			style += "height:" + height + ";";
+		}
+		if (width != null) {
+			style += "width:" + width + ";";
+		}
+		if (color != null) {
+			style += "background-color:" + color + ";";
+		}
+		return style;
+	}
+
+	static String getHighlightStyle(String highlight, boolean html) {
+		if (highlight == null) {
+			return html ? "background-color:gainsboro;" : "";
+		}
+		if (html) {
+			return "background-color:"
+					+ highlight.replace("yellow", "Khaki").replace("blue",
+							"Lightsteelblue").replace("pink", "Thistle") + ";";
+		}
+		return "background-color:"
+				+ highlight.replace("yellow", "Lemonchiffon").replace("blue",
+						"Lightcyan").replace("pink", "Mistyrose") + ";";
+	}
+
+	static String getParagraphStyle(ParDef def, boolean hasContent) {
+		return hasContent ? def.contentStyle : def.emptyStyle;
+	}
+
+	static String getListTag(ParDef def) {
+		return def.tag;
+	}
+
+	static String getListStyle(ParDef def) {
+		return def.contentStyle;
+	}
+
+	private static String compileParagraphStyle(ParDef def,
+			boolean hasContent) {
+		String style = "";
+
+		if (def.align.equals("full")) {
+			style += "text-align: justify;";
+		} else if (def.align.equals("center")) {
+			style += "text-align: center;";
+		} else if (def.align.equals("right")) {
+			style += "text-align: right;";
+		} else if (def.align.equals("none")) {
+			style += "white-space:nowrap;";
+		}
+
+		String marginStyle = "";
+
+		if (def.leftMargin.length() > 0 && hasContent) {
+			double margin = Double.isNaN(def.leftInches) ? 0
+					: def.leftInches - 1;
+			marginStyle += "margin-left:" + margin + "in;";
+		}
+
+		if (def.spaceAfter.length() > 0 && hasContent) {
+			if (def.spaceAfter.equals("2")) {
+				marginStyle += "margin-bottom:1em";
+			} else if (def.spaceAfter.equals("1.5")) {
+				marginStyle += "margin-bottom:0.5em";
+			}
+		}
+
+		if (marginStyle.length() > 0) {
+			style += "margin:0px;" + marginStyle;
+		}
+
+		if (def.newPage.equals("true")) {
+			style += "border-top: solid 1px black;";
+		}
+		return style;
+	}
+
+	private static String compileListTag(ParDef def) {
+		if (def.style.equals("number") || def.style.equals("alphaupper")
+				|| def.style.equals("alphalower")
+				|| def.style.equals("romanupper")
+				|| def.style.equals("romanlower")) {
+			return "ol";
+		}
+		return "ul";
+	}
+
+	private static String compileListStyle(ParDef def) {
+		String style = "";
+
+		if (def.style.equals("square")) {
+			style += "list-style-type:square;";
+		} else if (def.style.equals("circle")) {
+			style += "list-style-type:circle;";
+		} else if (def.style.equals("uncheck")) {
+			style += "list-style-type: square;";
+		} else if (def.style.equals("number")) {
+			style += "list-style-type:decimal;";
+		} else if (def.style.equals("alphaupper")) {
+			style += "list-style-type:upper-alpha;";
+		} else if (def.style.equals("alphalower")) {
+			style += "list-style-type:lower-alpha;";
+		} else if (def.style.equals("romanupper")) {
+			style += "list-style-type:upper-roman;";
+		} else if (def.style.equals("romanlower")) {
+			style += "list-style-type:lower-roman;";
+		} else if (def.style.equals("bullet")) {
+			style += "list-style-type:disc;";
+		} else {
+			style += "list-style-type:disc;";
+		}
+
+		double margin = Double.isNaN(def.leftInches) ? 0
+				: def.leftInches - 1.5;
+		style += "margin:0px;margin-left:" + margin + "in;";
+
+		if (def.align.equals("full")) {
+			style += "text-align: justify;";
+		} else if (def.align.equals("center")) {
+			style += "text-align: center;";
+		} else if (def.align.equals("right")) {
+			style += "text-align: right;";
+		}
+		return style;
+	}
+
+	/**
+	 * @param cacheKey prefix of the cache keys of the items, or null to
+	 *            bypass the converter's cache
+	 */
+	static Map<String, String> parseAll(RichText2HtmlConverter converter,
+			lotus.domino.Document doc, DxlExporter dxl, String cacheKey) {
+		Map<String, String> result = new LinkedHashMap<String, String>();
+		RichText2Html conversion = new RichText2Html(converter,
+				(String) null, null);
+		Map<String, Node> items;
+		try {
+			long start = conversion.startPhase();
+			String exported = dxl.exportDxl(doc);
+			conversion.endPhase(Phase.EXPORT, start);
+			items = conversion.loadItems(exported);
+		} catch (Exception e) {
+			conversion.fallbackCause = e;
+			conversion.report("");
+			return getPlainTexts(doc);
+		}
+
+		for (Map.Entry<String, Node> entry : items.entrySet()) {
+			if (conversion == null) {
+				conversion = new RichText2Html(converter, (String) null,
+						null);
+			}
+			RichText2HtmlResult converted;
+			try {
+				converted = conversion.convertItem(entry.getKey(), entry
+						.getValue());
+				if (cacheKey != null) {
+					converter.cache(cacheKey + entry.getKey(), converted);
+				}
+			} catch (Exception e) {
+				conversion.fallbackCause = e;
+				String text;
+				try {
+					text = getPlainText(doc.getFirstItem(entry.getKey()));
+				} catch (Exception ex) {
+					text = "";
+				}
+				converted = new RichText2HtmlResult(text, "");
+			}
+			String html = converted.getStyledHtml();
+			conversion.report(converted);
+			conversion = null;
+			result.put(entry.getKey(), html);
+		}
+		return result;
+	}
+
+	static Map<String, String> parseItems(RichText2HtmlConverter converter,
+			String dxl) throws Exception {
+		Map<String, String> result = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, RichText2HtmlResult> entry : convertItems(
+				converter, dxl).entrySet()) {
+			result.put(entry.getKey(), entry.getValue().getStyledHtml());
+		}
+		return result;
+	}
+
+	static Map<String, RichText2HtmlResult> convertItems(
+			RichText2HtmlConverter converter, String dxl) throws Exception {
+		Map<String, RichText2HtmlResult> result = new LinkedHashMap<String, RichText2HtmlResult>();
+		RichText2Html conversion = new RichText2Html(converter,
+				(String) null, null);
+		Map<String, Node> items;
+		try {
+			items = conversion.loadItems(dxl);
+		} catch (Exception e) {
+			conversion.fallbackCause = e;
+			conversion.report("");
+			throw e;
+		}
+		for (Map.Entry<String, Node> entry : items.entrySet()) {
+			if (conversion == null) {
+				conversion = new RichText2Html(converter, (String) null,
+						null);
+			}
+			RichText2HtmlResult converted;
+			try {
+				converted = conversion.convertItem(entry.getKey(), entry
+						.getValue());
+			} catch (Exception e) {
+				conversion.fallbackCause = e;
+				conversion.report("");
+				throw e;
+			}
+			conversion.report(converted);
+			conversion = null;
+			result.put(entry.getKey(), converted);
+		}
+		return result;
+	}
+
+	private Map<String, Node> loadItems(String dxl) throws Exception {
+		long start = startPhase();
+		if (stats != null) {
+			stats.setInputLength(dxl.length());
+		}
+		checkInputLength(dxl.length());
+		Map<String, Node> items = findRichTextItems(converter.loadDOM(trimDxl(dxl)));
+		endPhase(Phase.LOAD, start);
+		return items;
+	}
+
+	private RichText2HtmlResult convertItem(String itemName, Node richText)
+			throws Exception {
+		if (stats != null) {
+			stats.setItemName(itemName);
+		}
+		long start = startPhase();
+		Document doc = toRichTextDocument(converter, richText);
+		endPhase(Phase.LOAD, start);
+		return convert(doc);
+	}
+
+	static Map<String, String> getPlainTexts(lotus.domino.Document doc) {
+		Map<String, String> result = new LinkedHashMap<String, String>();
+		try {
+			for (Object value : doc.getItems()) {
+				Item item = (Item) value;
+				if (item.getType() == Item.RICHTEXT
+						&& !result.containsKey(item.getName())) {
+					result.put(item.getName(), getPlainText(item));
+				}
+			}
+		} catch (Exception e) {
+		}
+		return result;
+	}
+
+	/**
+	 * Exports the note of the item with the given exporter, or with one
+	 * created and recycled here if it is null.
+	 */
+	static String exportDxl(RichText2HtmlConverter converter, Item item,
+			DxlExporter shared) throws NotesException {
+		lotus.domino.Document doc = item.getParent();
+		if (shared != null) {
+			return shared.exportDxl(doc);
+		}
+		DxlExporter dxl = converter.createDxlExporter(doc, item.getName());
+		try {
+			return dxl.exportDxl(doc);
+		} finally {
+			dxl.recycle();
+		}
+	}
+
+	static String[] getRichTextItemNames(lotus.domino.Document doc)
+			throws NotesException {
+		List<String> names = new ArrayList<String>();
+		for (Object value : doc.getItems()) {
+			Item item = (Item) value;
+			if (item.getType() == Item.RICHTEXT
+					&& !names.contains(item.getName())) {
+				names.add(item.getName());
+			}
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Returns the items of a note's DXL, which may also be a bare item.
+	 */
+	static String trimDxl(String dxl) {
+		int pos = dxl.indexOf("<item");
+		if (pos < 0) {
+			return "";
+		}
+		int end = dxl.lastIndexOf("</document>");
+		return end < pos ? dxl.substring(pos) : dxl.substring(pos, end);
+	}
+
+	static String getPlainText(Item item) throws NotesException {
+		if (item.getType() == 1) {
+			RichTextItem rtitem = (RichTextItem)item;
+			return rtitem.getUnformattedText();
+		}
+		return item.getText();
+	}
+
+	static Map<String, Node> findRichTextItems(Document doc) {
+		Map<String, Node> items = new LinkedHashMap<String, Node>();
+		NodeList nodes = doc.getDocumentElement().getChildNodes();
+		for (int j = 0; j < nodes.getLength(); j++) {
+			Node node = nodes.item(j);
+			if (node.getNodeName() == "item") {
+				Node attrNode = node.getAttributes().getNamedItem("name");
+				Node richText = getRichText(node);
+				if (attrNode != null && richText != null
+						&& !items.containsKey(attrNode.getNodeValue())) {
+					items.put(attrNode.getNodeValue(), richText);
+				}
+			}
+		}
+		return items;
+	}
+
+	static Node findRichText(Document doc, String itemName) {
+		NodeList nodes = doc.getDocumentElement().getChildNodes();
+		for (int j = 0; j < nodes.getLength(); j++) {
+			Node node = nodes.item(j);
+			if (node.getNodeName() == "item") {
+				Node attrNode = node.getAttributes().getNamedItem("name");
+				if (attrNode != null
+						&& attrNode.getNodeValue().equals(itemName)) {
+					return getRichText(node);
+				}
+			}
+		}
+		return null;
+	}
+
+	static Node getRichText(Node item) {
+		for (Node child = item.getFirstChild(); child != null; child = child
+				.getNextSibling()) {
+			if (child.getNodeName() == "richtext") {
+				return child;
+			}
+		}
+		return null;
+	}
+
+	static Document toRichTextDocument(RichText2HtmlConverter converter,
+			Node richText) throws Exception {
+		Document doc = converter.newDocument();
+		Node body = doc.appendChild(doc.createElement("body"));
+		for (Node child = richText.getFirstChild(); child != null; child = richText
+				.getFirstChild()) {
+			Node adopted = doc.adoptNode(child);
+			if (adopted == null) {
+				adopted = doc.importNode(child, true);
+				richText.removeChild(child);
+			}
+			body.appendChild(adopted);
+		}
+		return doc;
+	}
+
+	static Document toRichTextDocument(Node richText) {
+		Document doc = richText.getOwnerDocument();
+		Node body = doc.getDocumentElement();
+		while (body.getFirstChild() != null) {
+			body.removeChild(body.getFirstChild());
+		}
+		while (richText.getFirstChild() != null) {
+			body.appendChild(richText.getFirstChild());
+		}
+		return doc;
+	}
+
+	private static String getAttribute(NamedNodeMap attrs, String name) {
+		Node attr = attrs.getNamedItem(name);
+		return attr == null ? null : attr.getNodeValue();
+	}
+
+	private String saveDOM(Document doc) throws Exception {
+		return converter.saveDOM(doc);
+	}
+
+	private String saveDOM(Node node) throws Exception {
+		return converter.saveDOM(node);
+	}
+
+	private Document loadDOM(String source) throws Exception {
+		return converter.loadDOM(source);
+	}
+
+	public boolean isOptionSet(int option) {
+		return (this.options & option) == option;
+	}
+	
+	public boolean isUseInlineStyles() {
+		return isOptionSet(USE_INLINE_STYLES);
+	}
+
+	public boolean isUseCssClasses() {
+		return isOptionSet(USE_CSS_CLASSES);
+	}
+
+	public boolean isUseStyles() {
+		return isUseInlineStyles() || isUseCssClasses();
+	}
+
+	/**
+	 * Styles the element if inline styles or CSS classes are enabled.
+	 */
+	public void setStyle(Node element, String style) {
+		if (isUseStyles() && style.length() > 0) {
+			applyStyle(element, style);
+		}
+	}
+
+	/**
+	 * Styles the element regardless of the options, with a class when CSS
+	 * classes are enabled and inline otherwise.
+	 */
+	public void applyStyle(Node element, String style) {
+		Attr attr;
+		if (isUseCssClasses()) {
+			attr = element.getOwnerDocument().createAttribute(ATTRIBUTE_CLASS);
+			attr.setNodeValue(styleSheet.getClassName(style));
+		} else {
+			attr = element.getOwnerDocument().createAttribute(ATTRIBUTE_STYLE);
+			attr.setNodeValue(style);
+		}
+		element.getAttributes().setNamedItem(attr);
+	}
+
+	public ParDef getParDef(String id) {
+		return parDefs.get(id);
+	}
+
+	static Map<String, ElementHandler> createDefaultHandlers() {
+		Map<String, ElementHandler> handlers = new HashMap<String, ElementHandler>();
+		handlers.put("break", (node, context) -> node.getOwnerDocument()
+				.createElement("br"));
+		handlers.put("run", (node, context) -> context.createRun(node));
+		handlers.put("horizrule", (node, context) -> context.createRule(node));
+		handlers.put("section", (node, context) -> context.createSection(node));
+		handlers.put("urllink", (node, context) -> context.createUrlLink(node));
+		handlers.put("popup", (node, context) -> context.createPopup(node));
+		handlers.put("button", (node, context) -> context.createButton(node));
+		handlers.put("actionhotspot", (node, context) -> context
+				.createActionHotspot(node));
+		handlers.put("table", (node, context) -> context.convertTable(node));
+		handlers.put("computedtext", (node, context) -> null);
+		handlers.put("picture", (node, context) -> context.createPicture(node));
+		return handlers;
+	}
+	
+	public static String parse(String richText, String plainText) {
+		return RichText2HtmlConverter.getInstance(ALL_OPTIONS_OFF).parse(
+				richText, plainText);
+	}
+
+	public static String parse(Item item) {
+		return new RichText2Html(item).parse();
+	}
+	
+	public static String parse(Item item, int options) {
+		return new RichText2Html(item, options).parse();
+	}
+
+	public static Map<String, String> parseAll(lotus.domino.Document doc) {
+		return parseAll(doc, ALL_OPTIONS_OFF);
+	}
+
+	public static Map<String, String> parseAll(lotus.domino.Document doc,
+			int options) {
+		return RichText2HtmlConverter.getInstance(options).parseAll(doc);
+	}
+
+	public static void parse(Reader dxl, Writer html) throws IOException {
+		parse(dxl, html, ALL_OPTIONS_OFF);
+	}
+
+	public static void parse(Reader dxl, Writer html, int options)
+			throws IOException {
+		RichText2HtmlConverter.getInstance(options).parse(dxl, html);
+	}
+
+	/**
+	 * A paragraph definition compiled once when the pardef is loaded: the
+	 * tag and the style strings are ready to be copied into every paragraph
+	 * that refers to it.
+	 */
+	public static class ParDef {
+
+		public static final byte PARAGRAPH = 1;
+		public static final byte LIST = 2;
+
+		public final byte kind;
+		public final String style;
+		public final String leftMargin;
+		public final String align;
+		public final String spaceAfter;
+		public final String newPage;
+
+		/** Left margin in inches, NaN if missing or malformed. */
+		final double leftInches;
+		/** ul or ol for lists, p for paragraphs. */
+		final String tag;
+		/** Style of a list, or of a paragraph with content. */
+		final String contentStyle;
+		/** Style of an empty paragraph. */
+		final String emptyStyle;
+
+		private ParDef(byte kind, String style, String leftMargin,
+				String align, String spaceAfter, String newPage) {
+			this.kind = kind;
+			this.style = style;
+			this.leftMargin = leftMargin;
+			this.align = align;
+			this.spaceAfter = spaceAfter;
+			this.newPage = newPage;
+
+			this.leftInches = parseInches(leftMargin);
+			if (kind == LIST) {
+				this.tag = compileListTag(this);
+				this.contentStyle = compileListStyle(this);
+				this.emptyStyle = contentStyle;
+			} else {
+				this.tag = "p";
+				this.contentStyle = compileParagraphStyle(this, true);
+				this.emptyStyle = compileParagraphStyle(this, false);
+			}
+		}
+
+		static ParDef valueOf(String list, String align, String leftMargin,
+				String spaceAfter, String newPage) {
+			if (list != null) {
+				return new ParDef(LIST, list, leftMargin == null ? ""
+						: leftMargin, align == null ? "" : align, "", "");
+			}
+			return new ParDef(PARAGRAPH, "", leftMargin == null ? ""
+					: leftMargin, align == null ? "" : align,
+					spaceAfter == null ? "" : spaceAfter,
+					align == null && newPage != null ? newPage : "");
+		}
+
+		String getStyle(boolean hasContent) {
+			return hasContent ? contentStyle : emptyStyle;
+		}
+
+		/**
+		 * An empty paragraph becomes a line break unless it carries a style.
+		 */
+		String getTag(boolean hasContent, boolean styled) {
+			if (hasContent || kind == LIST
+					|| (styled && emptyStyle.length() > 0)) {
+				return tag;
+			}
+			return "br";
+		}
+
+		private static double parseInches(String value) {
+			try {
+				return Double.parseDouble(value.replace("in", ""));
+			} catch (Exception e) {
+				return Double.NaN;
+			}
+		}
+
+	}
+
+	public static String getDxl(Item item) {
+		return getDxl(RichText2HtmlConverter.getInstance(ALL_OPTIONS_OFF), item);
+	}
+
+	static String getDxl(RichText2HtmlConverter converter, Item item) {
+		String richText = "";
+
+		try {
+			String html = trimDxl(exportDxl(converter, item, null));
+
+			Node node = findRichText(converter.loadDOM(html), item.getName());
+			if (node != null) {
+				richText = converter.saveXml(toRichTextDocument(node));
+			}
+
+		} catch (Exception e) {
+		}
+
+		return richText;
+	}
+
+}
@@ -0,0 +1,275 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import lotus.domino.Document;
+import lotus.domino.DocumentCollection;
+import lotus.domino.DxlExporter;
+import lotus.domino.NotesException;
+import lotus.domino.ViewEntry;
+import lotus.domino.ViewEntryCollection;
+
+/**
+ * Converts many notes at once. The DXL export stays on the calling thread,
+ * which must own the Domino session, and feeds a queue drained by a pool of
+ * conversion workers. The export blocks while queueCapacity + workers notes
+ * are exported but not yet delivered. Callbacks are never invoked
+ * concurrently. An Error in a conversion, or an exception thrown by a
+ * callback, stops the batch and is rethrown by convert().
+ */
+public final class RichText2HtmlBatch {
+
+	public interface Callback {
+
+		void converted(String unid, Map<String, String> html);
+
+		void failed(String unid, Exception cause);
+
+	}
+
+	private static final Task END = new Task(-1, null);
+
+	private final RichText2HtmlConverter converter;
+	private final int workers;
+	private final int queueCapacity;
+	private final boolean ordered;
+
+	public RichText2HtmlBatch(RichText2HtmlConverter converter, int workers) {
+		this(converter, workers, workers * 4, false);
+	}
+
+	/**
+	 * @param ordered deliver results in export order instead of completion
+	 *            order
+	 */
+	public RichText2HtmlBatch(RichText2HtmlConverter converter, int workers,
+			int queueCapacity, boolean ordered) {
+		if (workers < 1 || queueCapacity < 1) {
+			throw new IllegalArgumentException("workers and queueCapacity must be positive");
+		}
+		this.converter = converter;
+		this.workers = workers;
+		this.queueCapacity = queueCapacity;
+		this.ordered = ordered;
+	}
+
+	public void convert(DocumentCollection docs, Callback callback)
+			throws NotesException, InterruptedException {
+		Run run = new Run(callback);
+		DxlExporter dxl = null;
+		boolean done = false;
+		try {
+			Document doc = docs.getFirstDocument();
+			if (doc != null) {
+				dxl = converter.createDxlExporter(doc);
+			}
+			while (doc != null && !run.isFailed()) {
+				run.export(dxl, doc);
+				Document next = docs.getNextDocument(doc);
+				doc.recycle();
+				doc = next;
+			}
+			done = true;
+		} finally {
+			if (dxl != null) {
+				dxl.recycle();
+			}
+			run.finish(done);
+		}
+	}
+
+	public void convert(ViewEntryCollection entries, Callback callback)
+			throws NotesException, InterruptedException {
+		Run run = new Run(callback);
+		DxlExporter dxl = null;
+		boolean done = false;
+		try {
+			ViewEntry entry = entries.getFirstEntry();
+			while (entry != null && !run.isFailed()) {
+				if (entry.isDocument()) {
+					Document doc = entry.getDocument();
+					if (dxl == null) {
+						dxl = converter.createDxlExporter(doc);
+					}
+					run.export(dxl, doc);
+					doc.recycle();
+				}
+				ViewEntry next = entries.getNextEntry(entry);
+				entry.recycle();
+				entry = next;
+			}
+			done = true;
+		} finally {
+			if (dxl != null) {
+				dxl.recycle();
+			}
+			run.finish(done);
+		}
+	}
+
+	private final class Run implements Runnable {
+
+		private final Callback callback;
+		private final BlockingQueue<Task> queue = new LinkedBlockingQueue<Task>();
+		private final Semaphore pending = new Semaphore(queueCapacity + workers);
+		private final ExecutorService pool = Executors.newFixedThreadPool(workers);
+		private final Map<Long, Task> completed = new HashMap<Long, Task>();
+		private long exported;
+		private long delivered;
+		private volatile Throwable failure;
+
+		private Run(Callback callback) {
+			this.callback = callback;
+			for (int i = 0; i < workers; i++) {
+				pool.execute(this);
+			}
+		}
+
+		private void export(DxlExporter dxl, Document doc)
+				throws NotesException, InterruptedException {
+			pending.acquire();
+			Task task = new Task(exported++, doc.getUniversalID());
+			try {
+				task.dxl = dxl.exportDxl(doc);
+			} catch (NotesException e) {
+				task.failure = e;
+				deliver(task);
+				return;
+			}
+			queue.put(task);
+		}
+
+		private boolean isFailed() {
+			return failure != null;
+		}
+
+		private void finish(boolean done) throws InterruptedException {
+			try {
+				if (done) {
+					for (int i = 0; i < workers; i++) {
+						queue.put(END);
+					}
+					pool.shutdown();
+					while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+					}
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+			if (failure instanceof Error) {
+				throw (Error) failure;
+			} else if (failure != null) {
+				throw (RuntimeException) failure;
+			}
+		}
+
+		private synchronized void fail(Throwable cause) {
+			if (failure == null) {
+				failure = cause;
+			}
+		}
+
+		public void run() {
+			try {
+				while (true) {
+					Task task = queue.take();
+					if (task == END) {
+						return;
+					}
+					// every task is delivered, or an ordered run and the
+					// export waiting for its permit would never finish
+					try {
+						if (failure == null) {
+							task.html = converter.parseItems(task.dxl);
+						}
+					} catch (Exception e) {
+						task.failure = e;
+					} catch (Error e) {
+						fail(e);
+					} finally {
+						task.dxl = null;
+						deliver(task);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void deliver(Task task) {
+			synchronized (this) {
+				if (!ordered) {
+					dispatch(task);
+					return;
+				}
+				completed.put(task.seq, task);
+				Task next;
+				while ((next = completed.remove(delivered)) != null) {
+					delivered++;
+					dispatch(next);
+				}
+			}
+		}
+
+		private void dispatch(Task task) {
+			pending.release();
+			if (failure != null) {
+				return;
+			}
+			try {
+				if (task.failure == null) {
+					callback.converted(task.unid, task.html);
+				} else {
+					callback.failed(task.unid, task.failure);
+				}
+			} catch (RuntimeException e) {
+				fail(e);
+			} catch (Error e) {
+				fail(e);
+			}
+		}
+
+	}
+
+	private static final class Task {
+
+		private final long seq;
+		private final String unid;
+		private String dxl;
+		private Map<String, String> html;
+		private Exception failure;
+
+		private Task(long seq, String unid) {
+			this.seq = seq;
+			this.unid = unid;
+		}
+
+	}
+
+}
@@ -0,0 +1,1033 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import lotus.domino.DateTime;
+import lotus.domino.DxlExporter;
+import lotus.domino.Item;
+import lotus.domino.NotesException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import sirius.utils.domino.ConversionLimits.Limit;
+
+/**
+ * Immutable, thread-safe entry point for rich text conversion. The JAXP
+ * factories are looked up once per converter and the document builders and
+ * transformers they create are kept in small pools for reuse, so a single
+ * instance should be built once and shared. Pools rather than thread locals
+ * also let virtual threads, which run a single conversion each, reuse them.
+ */
+public final class RichText2HtmlConverter {
+
+	/** Conversions the default thread pool holds before rejecting more. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+	private static final ConcurrentMap<Integer, RichText2HtmlConverter> INSTANCES = new ConcurrentHashMap<Integer, RichText2HtmlConverter>();
+	private static final int POOL_SIZE = 2 * Runtime.getRuntime()
+			.availableProcessors();
+	/**
+	 * Fails on malformed DXL without printing to stderr, as the default
+	 * handler of the parser does; the caller reports the exception.
+	 */
+	private static final ErrorHandler PARSE_ERRORS = new ErrorHandler() {
+		public void warning(SAXParseException e) {
+		}
+
+		public void error(SAXParseException e) {
+		}
+
+		public void fatalError(SAXParseException e) throws SAXException {
+			throw e;
+		}
+	};
+
+	private final int options;
+	private final Settings settings;
+
+	private final DocumentBuilderFactory documentBuilderFactory;
+	private final TransformerFactory transformerFactory;
+	private final XMLInputFactory inputFactory;
+	private final XMLOutputFactory outputFactory;
+
+	private final BlockingQueue<DocumentBuilder> documentBuilders;
+	private final BlockingQueue<Transformer> transformers;
+
+	public RichText2HtmlConverter() {
+		this(RichText2Html.ALL_OPTIONS_OFF);
+	}
+
+	public RichText2HtmlConverter(int options) {
+		this.options = options;
+		this.settings = new Settings();
+
+		documentBuilderFactory = DocumentBuilderFactory.newInstance();
+		documentBuilderFactory.setValidating(false);
+		documentBuilderFactory.setNamespaceAware(false);
+		documentBuilderFactory.setIgnoringComments(false);
+		documentBuilderFactory.setIgnoringElementContentWhitespace(false);
+		documentBuilderFactory.setExpandEntityReferences(false);
+
+		transformerFactory = TransformerFactory.newInstance();
+		inputFactory = RichText2HtmlStreamer.createInputFactory();
+		outputFactory = XMLOutputFactory.newInstance();
+
+		documentBuilders = new ArrayBlockingQueue<DocumentBuilder>(POOL_SIZE);
+		transformers = new ArrayBlockingQueue<Transformer>(POOL_SIZE);
+	}
+
+	private RichText2HtmlConverter(RichText2HtmlConverter base,
+			Settings settings) {
+		this(base, base.options, settings);
+	}
+
+	private RichText2HtmlConverter(RichText2HtmlConverter base, int options,
+			Settings settings) {
+		this.options = options;
+		this.settings = settings;
+		this.documentBuilderFactory = base.documentBuilderFactory;
+		this.transformerFactory = base.transformerFactory;
+		this.inputFactory = base.inputFactory;
+		this.outputFactory = base.outputFactory;
+		this.documentBuilders = base.documentBuilders;
+		this.transformers = base.transformers;
+	}
+
+	static RichText2HtmlConverter getInstance(int options) {
+		RichText2HtmlConverter converter = INSTANCES.get(options);
+		if (converter == null) {
+			converter = new RichText2HtmlConverter(options);
+			RichText2HtmlConverter existing = INSTANCES.putIfAbsent(options,
+					converter);
+			if (existing != null) {
+				converter = existing;
+			}
+		}
+		return converter;
+	}
+
+	public int getOptions() {
+		return options;
+	}
+
+	/**
+	 * Returns a converter with the same settings and the given options.
+	 */
+	public RichText2HtmlConverter withOptions(int options) {
+		return options == this.options ? this : new RichText2HtmlConverter(
+				this, options, settings);
+	}
+
+	public boolean isOptionSet(int option) {
+		return (options & option) == option;
+	}
+
+	/**
+	 * Returns a converter that converts the named DXL element with the given
+	 * handler instead of the current one. This converter is left unchanged.
+	 * Handlers only apply to the DOM conversion, not to parse(Reader, Writer).
+	 */
+	public RichText2HtmlConverter withHandler(String elementName,
+			ElementHandler handler) {
+		if (handler == null) {
+			throw new IllegalArgumentException("handler must not be null");
+		}
+		Settings copy = settings.copy();
+		copy.handlers = new HashMap<String, ElementHandler>(settings.handlers);
+		copy.handlers.put(elementName, handler);
+		return new RichText2HtmlConverter(this, copy);
+	}
+
+	/**
+	 * Returns a converter that leaves the named DXL element untouched.
+	 */
+	public RichText2HtmlConverter withoutHandler(String elementName) {
+		Settings copy = settings.copy();
+		copy.handlers = new HashMap<String, ElementHandler>(settings.handlers);
+		copy.handlers.remove(elementName);
+		return new RichText2HtmlConverter(this, copy);
+	}
+
+	public ElementHandler getHandler(String elementName) {
+		return settings.handlers.get(elementName);
+	}
+
+	/**
+	 * Returns a converter that compiles pardefs through the given cache.
+	 * By default all converters share one cache.
+	 */
+	public RichText2HtmlConverter withParDefCache(ParDefCache parDefCache) {
+		if (parDefCache == null) {
+			throw new IllegalArgumentException("parDefCache must not be null");
+		}
+		Settings copy = settings.copy();
+		copy.parDefCache = parDefCache;
+		return new RichText2HtmlConverter(this, copy);
+	}
+
+	public ParDefCache getParDefCache() {
+		return settings.parDefCache;
+	}
+
+	/**
+	 * Returns a converter that reports every DOM conversion to the listener,
+	 * or none if it is null. Streaming conversions are not reported.
+	 */
+	public RichText2HtmlConverter withListener(ConversionListener listener) {
+		Settings copy = settings.copy();
+		copy.listener = listener;
+		return new RichText2HtmlConverter(this, copy);
+	}
+
+	public ConversionListener getListener() {
+		return settings.listener;
+	}
+
+	/**
+	 * Returns a converter that looks up results in the cache before it
+	 * exports or converts anything, or none if it is null. Items are keyed
+	 * by note UNID, item name and last modification time, rich text strings
+	 * by a SHA-256 digest. Results that fell back to the unformatted text
+	 * are not cached.
+	 */
+	public RichText2HtmlConverter withCache(HtmlCache cache) {
+		Settings copy = settings.copy();
+		copy.cache = cache;
+		return new RichText2HtmlConverter(this, copy);
+	}
+
+	public HtmlCache getCache() {
+		return settings.cache;
+	}
+
+	/**
+	 * Returns a converter that keeps results in the disk cache as a second
+	 * tier behind the in-memory cache, or in the disk cache alone if there
+	 * is none. Entries found on disk are copied to the in-memory cache.
+	 */
+	public RichText2HtmlConverter withDiskCache(DiskCache diskCache) {
+		Settings copy = settings.copy();
+		copy.diskCache = diskCache;
+		return new RichText2HtmlConverter(this, copy);
+	}
+
+	public DiskCache getDiskCache() {
+		return settings.diskCache;
+	}
+
+	/**
+	 * Returns a converter that hands embedded pictures to the image store
+	 * and refers to them with img elements, or drops them if it is null.
+	 * The HTML then depends on the store, so converters with different
+	 * stores should not share a cache.
+	 */
+	public RichText2HtmlConverter withImageStore(ImageStore imageStore) {
+		Settings copy = settings.copy();
+		copy.imageStore = imageStore;
+		return new RichText2HtmlConverter(this, copy);
+	}
+
+	public ImageStore getImageStore() {
+		return settings.imageStore;
+	}
+
+	/**
+	 * Returns a converter whose DXL exports convert Notes bitmaps to GIF,
+	 * which is the default. Turn it off when no image store is used and the
+	 * conversion is not needed.
+	 */
+	public RichText2HtmlConverter withBitmapConversion(boolean convert) {
+		Settings copy = settings.copy();
+		copy.convertBitmaps = convert;
+		return new RichText2HtmlConverter(this, copy);
+	}
+
+	public boolean isBitmapConversion() {
+		return settings.convertBitmaps;
+	}
+
+	/**
+	 * Returns a converter that has every exporter it creates configured by
+	 * the customizer, or only by its own settings if it is null.
+	 */
+	public RichText2HtmlConverter withExportCustomizer(
+			DxlExportCustomizer customizer) {
+		Settings copy = settings.copy();
+		copy.exportCustomizer = customizer;
+		return new RichText2HtmlConverter(this, copy);
+	}
+
+	public DxlExportCustomizer getExportCustomizer() {
+		return settings.exportCustomizer;
+	}
+
+	/**
+	 * Returns a converter whose exporters only export the rich text items
+	 * being converted, which is the default, or the whole note. Restricting
+	 * the export keeps attachments and other items from being serialized
+	 * and parsed.
+	 */
+	public RichText2HtmlConverter withRestrictedExport(boolean restrict) {
+		Settings copy = settings.copy();
+		copy.restrictExport = restrict;
+		return new RichText2HtmlConverter(this, copy);
+	}
+
+	public boolean isRestrictedExport() {
+		return settings.restrictExport;
+	}
+
+	/**
+	 * Returns a converter that keeps DOM conversions within the limits.
+	 * Streaming conversions are not limited.
+	 */
+	public RichText2HtmlConverter withLimits(ConversionLimits limits) {
+		if (limits == null) {
+			throw new IllegalArgumentException("limits must not be null");
+		}
+		Settings copy = settings.copy();
+		copy.limits = limits;
+		return new RichText2HtmlConverter(this, copy);
+	}
+
+	public ConversionLimits getLimits() {
+		return settings.limits;
+	}
+
+	/**
+	 * Returns a converter that runs asynchronous conversions on the
+	 * executor, or on the default one if it is null: a virtual thread per
+	 * conversion where the JDK has them, otherwise a pool of daemon threads
+	 * of its own, one per processor, that rejects conversions when
+	 * DEFAULT_QUEUE_CAPACITY are waiting. The futures of rejected
+	 * conversions fail with a RejectedExecutionException.
+	 */
+	public RichText2HtmlConverter withExecutor(Executor executor) {
+		Settings copy = settings.copy();
+		copy.executor = executor;
+		return new RichText2HtmlConverter(this, copy);
+	}
+
+	public Executor getExecutor() {
+		return settings.executor == null ? DefaultExecutor.INSTANCE
+				: settings.executor;
+	}
+
+	/**
+	 * Returns a converter that transforms rich text with at least minBlocks
+	 * top-level blocks (paragraphs or lists, tables, sections) in parallel on
+	 * the pool, or on the common pool if it is null. Rich text with fewer
+	 * blocks, and all of it if minBlocks is 0, is transformed on the calling
+	 * thread.
+	 */
+	public RichText2HtmlConverter withParallelTransform(int minBlocks,
+			ForkJoinPool pool) {
+		if (minBlocks < 0) {
+			throw new IllegalArgumentException("minBlocks must not be negative");
+		}
+		Settings copy = settings.copy();
+		copy.parallelMinBlocks = minBlocks;
+		copy.forkJoinPool = pool;
+		return new RichText2HtmlConverter(this, copy);
+	}
+
+	/**
+	 * Returns the number of blocks from which rich text is transformed in
+	 * parallel, or 0 if it never is.
+	 */
+	public int getParallelMinBlocks() {
+		return settings.parallelMinBlocks;
+	}
+
+	public ForkJoinPool getForkJoinPool() {
+		return settings.forkJoinPool == null ? ForkJoinPool.commonPool()
+				: settings.forkJoinPool;
+	}
+
+	Map<String, ElementHandler> getHandlers() {
+		return settings.handlers;
+	}
+
+	public String parse(String richText, String plainText) {
+		return convert(richText, plainText).getStyledHtml();
+	}
+
+	public String parse(Item item) {
+		return convert(item).getStyledHtml();
+	}
+
+	/**
+	 * Like parse(String, String), but keeps the stylesheet generated with
+	 * USE_CSS_CLASSES apart from the HTML.
+	 */
+	public RichText2HtmlResult convert(String richText, String plainText) {
+		return convert(richText, plainText, new RichText2Html(this, richText,
+				plainText));
+	}
+
+	private RichText2HtmlResult convert(String richText, String plainText,
+			RichText2Html conversion) {
+		if (!isCaching()) {
+			return conversion.getResult();
+		}
+		String key = getCacheKey(richText, plainText);
+		RichText2HtmlResult result = getCached(key);
+		if (result == null) {
+			result = conversion.getResult();
+			if (!conversion.isFallback()) {
+				cache(key, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Converts on the converter's executor. Cancelling the future interrupts
+	 * the conversion. The timeout of the converter's limits runs from this
+	 * call: when it passes, the future fails with a TimeoutException even if
+	 * the conversion is still queued or busy, and the conversion is
+	 * interrupted.
+	 */
+	public CompletableFuture<String> parseAsync(String richText,
+			String plainText) {
+		return submitParse(richText, plainText);
+	}
+
+	private ConversionTask<String> submitParse(String richText,
+			String plainText) {
+		final RichText2Html conversion = new RichText2Html(this, richText,
+				plainText);
+		return submit(new ConversionTask<String>(() -> {
+			RichText2HtmlResult result = convert(richText, plainText,
+					conversion);
+			if (result.getLimit() == Limit.DEADLINE) {
+				throw new TimeoutException("conversion timed out");
+			}
+			return result.getStyledHtml();
+		}), () -> {
+			throw new TimeoutException("conversion timed out");
+		});
+	}
+
+	/**
+	 * Like parseAsync(), but keeps the stylesheet apart and reports limits
+	 * in the result instead of failing. At the timeout the future completes
+	 * with the unformatted text, aborted by the deadline.
+	 */
+	public CompletableFuture<RichText2HtmlResult> convertAsync(
+			String richText, String plainText) {
+		final RichText2Html conversion = new RichText2Html(this, richText,
+				plainText);
+		return submit(new ConversionTask<RichText2HtmlResult>(() -> convert(
+				richText, plainText, conversion)),
+				() -> new RichText2HtmlResult(plainText, "",
+						RichText2HtmlResult.Status.ABORTED, Limit.DEADLINE));
+	}
+
+	/**
+	 * Converts each rich text concurrently, without unformatted text to
+	 * fall back to, and returns the HTML in iteration order. The future
+	 * fails as soon as one conversion fails, and cancelling it cancels all
+	 * conversions.
+	 */
+	public CompletableFuture<List<String>> parseAllAsync(
+			Collection<String> richTexts) {
+		List<ConversionTask<String>> tasks = new ArrayList<ConversionTask<String>>(
+				richTexts.size());
+		for (String richText : richTexts) {
+			tasks.add(submitParse(richText, ""));
+		}
+		return ConversionTask.all(tasks);
+	}
+
+	private <T> ConversionTask<T> submit(ConversionTask<T> task,
+			Callable<T> onTimeout) {
+		long timeout = settings.limits.getTimeoutNanos();
+		if (timeout > 0) {
+			task.expireAfter(timeout, onTimeout);
+		}
+		try {
+			getExecutor().execute(task);
+		} catch (RejectedExecutionException e) {
+			task.completeExceptionally(e);
+		}
+		return task;
+	}
+
+	/**
+	 * Converts rich text block by block and reuses the HTML of every block
+	 * found unchanged in the previous snapshot, so that re-converting after
+	 * a small edit only transforms the edited blocks. previous may be null.
+	 * The memory and disk caches are not used.
+	 */
+	public RichText2HtmlSnapshot convert(String richText, String plainText,
+			RichText2HtmlSnapshot previous) {
+		return new RichText2Html(this, richText, plainText).convert(previous);
+	}
+
+	public RichText2HtmlResult convert(Item item) {
+		return convert(item, null);
+	}
+
+	/**
+	 * Exports the item's note with the given exporter, which is used as
+	 * configured by the caller and not recycled, so one exporter can be
+	 * shared by many conversions on the same session.
+	 */
+	public String parse(Item item, DxlExporter dxl) {
+		return convert(item, dxl).getStyledHtml();
+	}
+
+	/**
+	 * Like parse(Item, DxlExporter), but keeps the stylesheet apart from the
+	 * HTML. With a null exporter the converter creates its own.
+	 */
+	public RichText2HtmlResult convert(Item item, DxlExporter dxl) {
+		String key = null;
+		if (isCaching()) {
+			try {
+				key = getCacheKey(item.getParent());
+				if (key != null) {
+					key += item.getName();
+					RichText2HtmlResult result = getCached(key);
+					if (result != null) {
+						return result;
+					}
+				}
+			} catch (NotesException e) {
+				key = null;
+			}
+		}
+		RichText2Html conversion = new RichText2Html(this, item, dxl);
+		RichText2HtmlResult result = conversion.getResult();
+		if (key != null && !conversion.isFallback()) {
+			cache(key, result);
+		}
+		return result;
+	}
+
+	public Map<String, String> parseAll(lotus.domino.Document doc) {
+		String key = getCacheKey(doc);
+		Map<String, String> html = getCached(doc, key);
+		if (html != null) {
+			return html;
+		}
+		try {
+			DxlExporter dxl = createDxlExporter(doc, RichText2Html
+					.getRichTextItemNames(doc));
+			try {
+				return RichText2Html.parseAll(this, doc, dxl, key);
+			} finally {
+				dxl.recycle();
+			}
+		} catch (NotesException e) {
+			return RichText2Html.getPlainTexts(doc);
+		}
+	}
+
+	/**
+	 * Exports the note once with the given exporter and converts every rich
+	 * text item in it, keyed by item name. The exporter is not recycled.
+	 */
+	public Map<String, String> parseAll(lotus.domino.Document doc,
+			DxlExporter dxl) {
+		String key = getCacheKey(doc);
+		Map<String, String> html = getCached(doc, key);
+		if (html != null) {
+			return html;
+		}
+		return RichText2Html.parseAll(this, doc, dxl, key);
+	}
+
+	/**
+	 * Converts every rich text item of an exported note. Unlike parseAll()
+	 * this needs no Domino session and fails instead of falling back to the
+	 * unformatted text.
+	 */
+	Map<String, String> parseItems(String dxl) throws Exception {
+		return RichText2Html.parseItems(this, dxl);
+	}
+
+	/**
+	 * Like parseItems(), but keeps the stylesheets apart and tells whether
+	 * limits cut the conversions short.
+	 */
+	Map<String, RichText2HtmlResult> convertItems(String dxl)
+			throws Exception {
+		return RichText2Html.convertItems(this, dxl);
+	}
+
+	public String getDxl(Item item) {
+		return RichText2Html.getDxl(this, item);
+	}
+
+	public void parse(Reader dxl, Writer html) throws IOException {
+		try {
+			XMLStreamReader reader;
+			synchronized (inputFactory) {
+				reader = inputFactory
+						.createXMLStreamReader(RichText2HtmlStreamer
+								.wrapFragment(dxl));
+			}
+			try {
+				reader.nextTag();
+				new RichText2HtmlStreamer(reader, outputFactory, html, options,
+						settings.parDefCache, settings.imageStore).convert();
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Converts every rich text item of a database export, e.g. a whole
+	 * database written by DxlExporter, in one pass. Only the item being
+	 * converted is held in memory, so exports of any size can be converted.
+	 * The encoding is taken from the XML declaration.
+	 */
+	public void parseDatabase(InputStream dxl, ItemCallback callback)
+			throws IOException {
+		try {
+			XMLStreamReader reader;
+			synchronized (inputFactory) {
+				reader = inputFactory.createXMLStreamReader(dxl);
+			}
+			parseDatabase(reader, callback);
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	public void parseDatabase(Reader dxl, ItemCallback callback)
+			throws IOException {
+		try {
+			XMLStreamReader reader;
+			synchronized (inputFactory) {
+				reader = inputFactory.createXMLStreamReader(dxl);
+			}
+			parseDatabase(reader, callback);
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Walks the export and hands the richtext element of every item of a
+	 * document to the streaming converter, which consumes it up to its end
+	 * tag.
+	 */
+	private void parseDatabase(XMLStreamReader reader, ItemCallback callback)
+			throws XMLStreamException, IOException {
+		try {
+			int depth = 0;
+			int documentDepth = -1;
+			int itemDepth = -1;
+			String unid = null;
+			String itemName = null;
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					depth++;
+					String name = reader.getLocalName();
+					if (name.equals("document")) {
+						documentDepth = depth;
+						unid = null;
+					} else if (documentDepth < 0) {
+						continue;
+					} else if (depth == documentDepth + 1
+							&& name.equals("noteinfo")) {
+						unid = reader.getAttributeValue(null, "unid");
+					} else if (depth == documentDepth + 1
+							&& name.equals("item")) {
+						itemDepth = depth;
+						itemName = reader.getAttributeValue(null, "name");
+					} else if (depth == itemDepth + 1
+							&& name.equals("richtext")) {
+						StringWriter html = new StringWriter();
+						new RichText2HtmlStreamer(reader, outputFactory, html,
+								options, settings.parDefCache,
+								settings.imageStore).convert();
+						depth--;
+						callback.converted(unid, itemName, html.toString());
+					}
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					if (depth == itemDepth) {
+						itemDepth = -1;
+					} else if (depth == documentDepth) {
+						documentDepth = -1;
+						unid = null;
+					}
+					depth--;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Creates an exporter for the notes of the document's session. With
+	 * restricted export and itemNames given, only those items are exported.
+	 */
+	DxlExporter createDxlExporter(lotus.domino.Document doc,
+			String... itemNames) throws NotesException {
+		DxlExporter dxl = doc.getParentDatabase().getParent()
+				.createDxlExporter();
+		try {
+			dxl.setConvertNotesBitmapsToGIF(settings.convertBitmaps);
+			if (settings.restrictExport && itemNames.length > 0) {
+				try {
+					dxl.setRestrictToItemNames(new Vector<String>(Arrays
+							.asList(itemNames)));
+				} catch (NotesException e) {
+					// releases without item restriction export the whole note
+				}
+			}
+			if (settings.exportCustomizer != null) {
+				settings.exportCustomizer.customize(dxl);
+			}
+		} catch (NotesException e) {
+			dxl.recycle();
+			throw e;
+		}
+		return dxl;
+	}
+
+	/**
+	 * Returns the cache key prefix of the items of a note, or null if there
+	 * is no cache or the note cannot be identified.
+	 */
+	String getCacheKey(lotus.domino.Document doc) {
+		if (!isCaching()) {
+			return null;
+		}
+		try {
+			DateTime modified = doc.getLastModified();
+			if (modified == null) {
+				return null;
+			}
+			long time;
+			try {
+				time = modified.toJavaDate().getTime();
+			} finally {
+				modified.recycle();
+			}
+			return options + ":" + doc.getUniversalID() + ":" + time + ":";
+		} catch (NotesException e) {
+			return null;
+		}
+	}
+
+	private boolean isCaching() {
+		return settings.cache != null || settings.diskCache != null;
+	}
+
+	private RichText2HtmlResult getCached(String key) {
+		RichText2HtmlResult result = null;
+		if (settings.cache != null) {
+			result = settings.cache.get(key);
+		}
+		if (result == null && settings.diskCache != null) {
+			result = settings.diskCache.get(key);
+			if (result != null && settings.cache != null) {
+				settings.cache.put(key, result);
+			}
+		}
+		return result;
+	}
+
+	void cache(String key, RichText2HtmlResult result) {
+		if (result.getStatus() != RichText2HtmlResult.Status.COMPLETE) {
+			return;
+		}
+		if (settings.cache != null) {
+			settings.cache.put(key, result);
+		}
+		if (settings.diskCache != null) {
+			settings.diskCache.put(key, result);
+		}
+	}
+
+	private String getCacheKey(String richText, String plainText) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(richText.getBytes("UTF-8"));
+			digest.update((byte) 0);
+			if (plainText != null) {
+				digest.update(plainText.getBytes("UTF-8"));
+			}
+			return options + ":" + new BigInteger(1, digest.digest()).toString(36);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the cached conversions of all rich text items of the note, or
+	 * null unless every one of them is cached.
+	 */
+	private Map<String, String> getCached(lotus.domino.Document doc,
+			String key) {
+		if (key == null) {
+			return null;
+		}
+		Map<String, String> result = new LinkedHashMap<String, String>();
+		try {
+			for (Object value : doc.getItems()) {
+				Item item = (Item) value;
+				if (item.getType() == Item.RICHTEXT
+						&& !result.containsKey(item.getName())) {
+					RichText2HtmlResult html = getCached(key
+							+ item.getName());
+					if (html == null) {
+						return null;
+					}
+					result.put(item.getName(), html.getStyledHtml());
+				}
+			}
+		} catch (NotesException e) {
+			return null;
+		}
+		return result;
+	}
+
+	Document newDocument() throws ParserConfigurationException {
+		DocumentBuilder builder = getDocumentBuilder();
+		try {
+			return builder.newDocument();
+		} finally {
+			documentBuilders.offer(builder);
+		}
+	}
+
+	Document loadDOM(String source) throws Exception {
+		DocumentBuilder builder = getDocumentBuilder();
+		try {
+			return builder.parse(new InputSource(new StringReader("<body>"
+					+ source + "</body>")));
+		} finally {
+			documentBuilders.offer(builder);
+		}
+	}
+
+	/**
+	 * Serializes the converted content of the body element as HTML.
+	 */
+	String saveDOM(Document doc) throws IOException {
+		StringBuilder html = new StringBuilder(1024);
+		HtmlSerializer.writeChildren(doc.getDocumentElement(), html);
+		return html.toString();
+	}
+
+	String saveDOM(Node node) throws IOException {
+		StringBuilder html = new StringBuilder(256);
+		HtmlSerializer.write(node, html);
+		return html.toString();
+	}
+
+	/**
+	 * Serializes the content of the body element as XML, for DXL that has
+	 * not been converted.
+	 */
+	String saveXml(Document doc) throws Exception {
+		DOMSource source = new DOMSource(doc.getDocumentElement());
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		StreamResult result = new StreamResult(stream);
+		Transformer transformer = getTransformer();
+		try {
+			transformer.transform(source, result);
+		} finally {
+			transformers.offer(transformer);
+		}
+
+		String tag = stream.toString("UTF-8");
+		String pattern = "<body>";
+		int pos = tag.indexOf(pattern);
+		if (pos < 0) {
+			return "";
+		}
+		tag = tag.substring(pos + pattern.length());
+		pos = tag.lastIndexOf("</body>");
+		return tag.substring(0, pos);
+	}
+
+	/**
+	 * The configuration that differs between converters derived with the
+	 * with* methods. A Settings instance is never changed once a converter
+	 * holds it.
+	 */
+	private static final class Settings implements Cloneable {
+
+		private Map<String, ElementHandler> handlers = RichText2Html
+				.createDefaultHandlers();
+		private ParDefCache parDefCache = ParDefCache.SHARED;
+		private ConversionListener listener;
+		private HtmlCache cache;
+		private DiskCache diskCache;
+		private ImageStore imageStore;
+		private boolean convertBitmaps = true;
+		private DxlExportCustomizer exportCustomizer;
+		private boolean restrictExport = true;
+		private ConversionLimits limits = ConversionLimits.NONE;
+		private Executor executor;
+		private int parallelMinBlocks;
+		private ForkJoinPool forkJoinPool;
+
+		private Settings copy() {
+			try {
+				return (Settings) clone();
+			} catch (CloneNotSupportedException e) {
+				throw new AssertionError(e);
+			}
+		}
+
+	}
+
+	/**
+	 * Created on first use. Virtual threads are looked up reflectively, as
+	 * the sources stay compatible with Java 8. The thread pool is not the
+	 * common fork/join pool, which the parallel transform may use.
+	 */
+	private static final class DefaultExecutor {
+
+		private static final Executor INSTANCE = create();
+
+		private static Executor create() {
+			Executor executor = newVirtualThreadExecutor();
+			if (executor != null) {
+				return executor;
+			}
+			final AtomicInteger threads = new AtomicInteger();
+			int size = Runtime.getRuntime().availableProcessors();
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60,
+					TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+							DEFAULT_QUEUE_CAPACITY), runnable -> {
+						Thread thread = Executors.defaultThreadFactory()
+								.newThread(runnable);
+						thread.setName("rich-text-conversion-"
+								+ threads.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					});
+			pool.allowCoreThreadTimeOut(true);
+			return pool;
+		}
+
+	}
+
+	/**
+	 * Returns an executor starting a virtual thread per task, or null if
+	 * the JDK has no virtual threads.
+	 */
+	static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Takes a builder from the pool or creates one. The caller offers it
+	 * back when done; a full pool drops it.
+	 */
+	private DocumentBuilder getDocumentBuilder()
+			throws ParserConfigurationException {
+		DocumentBuilder builder = documentBuilders.poll();
+		if (builder == null) {
+			synchronized (documentBuilderFactory) {
+				builder = documentBuilderFactory.newDocumentBuilder();
+			}
+		} else {
+			builder.reset();
+		}
+		builder.setErrorHandler(PARSE_ERRORS);
+		return builder;
+	}
+
+	private Transformer getTransformer()
+			throws TransformerConfigurationException {
+		Transformer transformer = transformers.poll();
+		if (transformer == null) {
+			synchronized (transformerFactory) {
+				transformer = transformerFactory.newTransformer();
+			}
+		} else {
+			transformer.reset();
+		}
+		return transformer;
+	}
+
+}
@@ -0,0 +1,473 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Converts DXL files exported beforehand, e.g. by DxlExporter, without a
+ * Domino runtime. Every rich text item of a file is written next to the
+ * others in the output directory as name.html, or name.item.html if the
+ * file holds more than one item. Files are converted by a pool of workers,
+ * each reading and converting one file at a time, and at most four paths
+ * per worker wait in the queue, so only the output names written grow with
+ * the number of files. A file whose output names were already written in
+ * the run fails instead of overwriting them. Each .html file is written to
+ * a temporary file first and then moved into place, so a crashed run never
+ * leaves partial output behind.
+ */
+public final class RichText2HtmlFiles {
+
+	/** Files above this size are memory mapped instead of read. */
+	private static final long MAP_THRESHOLD = 1 << 20;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int MAX_REPORTED_FAILURES = 20;
+
+	private final RichText2HtmlConverter converter;
+	private final int workers;
+
+	public RichText2HtmlFiles(RichText2HtmlConverter converter, int workers) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("workers must be positive");
+		}
+		this.converter = converter;
+		this.workers = workers;
+	}
+
+	/**
+	 * Converts all .dxl files below inputDir, keeping their relative paths
+	 * in outputDir.
+	 */
+	public Summary convert(final File inputDir, File outputDir)
+			throws IOException, InterruptedException {
+		final Run run = new Run(outputDir);
+		final Path base = inputDir.toPath();
+		try {
+			Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+				public FileVisitResult visitFile(Path file,
+						BasicFileAttributes attrs) throws IOException {
+					if (attrs.isRegularFile()
+							&& file.getFileName().toString().toLowerCase(
+									Locale.ENGLISH).endsWith(".dxl")) {
+						if (!run.submit(file, base.relativize(file))) {
+							return FileVisitResult.TERMINATE;
+						}
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} finally {
+			run.finish();
+		}
+		return run.summary;
+	}
+
+	/**
+	 * Converts the given files. As they may come from anywhere, the output
+	 * mirrors their absolute paths below outputDir.
+	 */
+	public Summary convert(Iterable<File> files, File outputDir)
+			throws IOException, InterruptedException {
+		Run run = new Run(outputDir);
+		try {
+			for (File file : files) {
+				Path path = file.toPath();
+				if (!run.submit(path, mirror(path))) {
+					break;
+				}
+			}
+		} finally {
+			run.finish();
+		}
+		return run.summary;
+	}
+
+	/**
+	 * Converts the files listed one per line, reading the list as the run
+	 * goes.
+	 */
+	Summary convert(BufferedReader list, File outputDir)
+			throws IOException, InterruptedException {
+		Run run = new Run(outputDir);
+		try {
+			String line;
+			while ((line = list.readLine()) != null) {
+				if (line.trim().length() > 0) {
+					Path path = new File(line.trim()).toPath();
+					if (!run.submit(path, mirror(path))) {
+						break;
+					}
+				}
+			}
+		} finally {
+			run.finish();
+		}
+		return run.summary;
+	}
+
+	private final class Run {
+
+		private final Path outputDir;
+		private final ExecutorService pool = Executors.newFixedThreadPool(workers);
+		private final Semaphore pending = new Semaphore(workers * 4);
+		private final Summary summary = new Summary();
+		/** The files written in this run and the DXL file each comes from. */
+		private final ConcurrentMap<Path, Path> written = new ConcurrentHashMap<Path, Path>();
+
+		private Run(File outputDir) throws IOException {
+			this.outputDir = outputDir.toPath();
+			Files.createDirectories(this.outputDir);
+		}
+
+		/**
+		 * Returns false if the thread was interrupted while waiting for a
+		 * worker, leaving it interrupted so that finish() stops the run.
+		 */
+		private boolean submit(final Path file, final Path relative) {
+			try {
+				pending.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			try {
+				pool.execute(new Runnable() {
+					public void run() {
+						try {
+							convert(file, relative);
+						} finally {
+							pending.release();
+						}
+					}
+				});
+			} catch (RuntimeException e) {
+				pending.release();
+				throw e;
+			}
+			return true;
+		}
+
+		private void convert(Path file, Path relative) {
+			try {
+				long size = Files.size(file);
+				String dxl = read(file);
+				Map<String, String> items = converter.parseItems(dxl);
+				String name = relative.toString();
+				if (name.toLowerCase(Locale.ENGLISH).endsWith(".dxl")) {
+					name = name.substring(0, name.length() - 4);
+				}
+				Map<Path, String> outputs = new LinkedHashMap<Path, String>();
+				for (Map.Entry<String, String> item : items.entrySet()) {
+					String fileName = items.size() == 1 ? name : name + "."
+							+ toFileName(item.getKey());
+					// item names may differ only in characters replaced
+					Path output = outputDir.resolve(fileName + ".html");
+					for (int i = 2; outputs.containsKey(output); i++) {
+						output = outputDir.resolve(fileName + "-" + i + ".html");
+					}
+					outputs.put(output, item.getValue());
+				}
+				claim(file, outputs.keySet());
+				for (Map.Entry<Path, String> output : outputs.entrySet()) {
+					write(output.getKey(), output.getValue());
+				}
+				summary.documents.incrementAndGet();
+				summary.items.addAndGet(items.size());
+				summary.bytes.addAndGet(size);
+			} catch (Throwable e) {
+				summary.failed(file, e);
+			}
+		}
+
+		/**
+		 * Reserves the output files for the DXL file, or fails without
+		 * reserving any if another file of the run wrote one of them.
+		 */
+		private void claim(Path file, Collection<Path> outputs)
+				throws IOException {
+			List<Path> claimed = new ArrayList<Path>(outputs.size());
+			for (Path output : outputs) {
+				Path other = written.putIfAbsent(output, file);
+				if (other != null) {
+					for (Path path : claimed) {
+						written.remove(path);
+					}
+					throw new FileAlreadyExistsException(output.toString(),
+							other.toString(), "written for another file");
+				}
+				claimed.add(output);
+			}
+		}
+
+		/**
+		 * Waits for the files submitted, or stops the workers and throws
+		 * InterruptedException if the thread is interrupted.
+		 */
+		private void finish() throws InterruptedException {
+			try {
+				pool.shutdown();
+				while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+				}
+			} finally {
+				pool.shutdownNow();
+				summary.end = System.nanoTime();
+			}
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+
+	}
+
+	/**
+	 * Reads the file as UTF-8, the encoding DxlExporter writes. Large files
+	 * are memory mapped so they are decoded without an extra copy on the
+	 * heap.
+	 */
+	static String read(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("file too large: " + file);
+			}
+			ByteBuffer buffer;
+			if (size > MAP_THRESHOLD) {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			} else {
+				buffer = ByteBuffer.allocate((int) size);
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				}
+				buffer.flip();
+			}
+			return UTF8.newDecoder().onMalformedInput(
+					CodingErrorAction.REPLACE).onUnmappableCharacter(
+					CodingErrorAction.REPLACE).decode(buffer).toString();
+		} finally {
+			channel.close();
+		}
+	}
+
+	static void write(Path file, String html) throws IOException {
+		Path dir = file.getParent();
+		Files.createDirectories(dir);
+		Path temp = Files.createTempFile(dir, "html", ".tmp");
+		try {
+			OutputStream out = Files.newOutputStream(temp);
+			try {
+				Writer writer = new OutputStreamWriter(out, UTF8);
+				writer.write(html);
+				writer.flush();
+			} finally {
+				out.close();
+			}
+			try {
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Returns the absolute path of the file without its root, e.g. the
+	 * drive or the leading slash.
+	 */
+	static Path mirror(Path file) {
+		Path path = file.toAbsolutePath().normalize();
+		Path root = path.getRoot();
+		return root == null ? path : root.relativize(path);
+	}
+
+	private static String toFileName(String itemName) {
+		StringBuilder name = new StringBuilder(itemName.length());
+		for (int i = 0; i < itemName.length(); i++) {
+			char ch = itemName.charAt(i);
+			name.append(Character.isLetterOrDigit(ch) || ch == '-'
+					|| ch == '_' ? ch : '_');
+		}
+		return name.toString();
+	}
+
+	/**
+	 * Counts of a run. The failures keep the first files that failed and
+	 * how often each kind of cause occurred.
+	 */
+	public static final class Summary {
+
+		private final long start = System.nanoTime();
+		private volatile long end;
+		private final AtomicLong documents = new AtomicLong();
+		private final AtomicLong items = new AtomicLong();
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicLong failed = new AtomicLong();
+		private final Map<File, Throwable> failures = new LinkedHashMap<File, Throwable>();
+		private final Map<String, Long> causes = new LinkedHashMap<String, Long>();
+
+		private void failed(Path file, Throwable cause) {
+			failed.incrementAndGet();
+			synchronized (this) {
+				if (failures.size() < MAX_REPORTED_FAILURES) {
+					failures.put(file.toFile(), cause);
+				}
+				String kind = cause.getClass().getName();
+				Long count = causes.get(kind);
+				causes.put(kind, count == null ? 1 : count + 1);
+			}
+		}
+
+		public long getDocuments() {
+			return documents.get();
+		}
+
+		public long getItems() {
+			return items.get();
+		}
+
+		/**
+		 * Returns the size of the files converted without failure.
+		 */
+		public long getBytes() {
+			return bytes.get();
+		}
+
+		public long getFailed() {
+			return failed.get();
+		}
+
+		public synchronized Map<File, Throwable> getFailures() {
+			return Collections.unmodifiableMap(new LinkedHashMap<File, Throwable>(
+					failures));
+		}
+
+		public synchronized Map<String, Long> getCauses() {
+			return Collections.unmodifiableMap(new LinkedHashMap<String, Long>(
+					causes));
+		}
+
+		public long getElapsedNanos() {
+			return (end == 0 ? System.nanoTime() : end) - start;
+		}
+
+		public String toString() {
+			double seconds = Math.max(getElapsedNanos(), 1) / 1e9;
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format(Locale.ENGLISH,
+					"%d documents (%d items, %.1f MB) in %.1f s: "
+							+ "%.1f docs/s, %.2f MB/s, %d failed",
+					getDocuments(), getItems(), getBytes() / 1e6, seconds,
+					getDocuments() / seconds, getBytes() / 1e6 / seconds,
+					getFailed()));
+			for (Map.Entry<String, Long> cause : getCauses().entrySet()) {
+				sb.append("\n  ").append(cause.getValue()).append(" x ")
+						.append(cause.getKey());
+			}
+			for (Map.Entry<File, Throwable> failure : getFailures()
+					.entrySet()) {
+				sb.append("\n  ").append(failure.getKey()).append(": ")
+						.append(failure.getValue());
+			}
+			return sb.toString();
+		}
+
+	}
+
+	/**
+	 * Usage: RichText2HtmlFiles [-workers n] [-options n] input output,
+	 * where input is a directory searched for .dxl files or @list, a file
+	 * listing one DXL file per line.
+	 */
+	public static void main(String[] args) throws Exception {
+		int workers = Runtime.getRuntime().availableProcessors();
+		int options = RichText2Html.USE_INLINE_STYLES;
+		List<String> paths = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-workers") && i + 1 < args.length) {
+				workers = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-options") && i + 1 < args.length) {
+				options = Integer.parseInt(args[++i]);
+			} else {
+				paths.add(args[i]);
+			}
+		}
+		if (paths.size() != 2) {
+			System.err.println("Usage: RichText2HtmlFiles [-workers n] "
+					+ "[-options n] <input dir | @file list> <output dir>");
+			System.exit(2);
+		}
+		RichText2HtmlFiles files = new RichText2HtmlFiles(
+				new RichText2HtmlConverter(options), workers);
+		String input = paths.get(0);
+		File output = new File(paths.get(1));
+		Summary summary;
+		if (input.startsWith("@")) {
+			BufferedReader list = new BufferedReader(new InputStreamReader(
+					new FileInputStream(input.substring(1)), UTF8));
+			try {
+				summary = files.convert(list, output);
+			} finally {
+				list.close();
+			}
+		} else {
+			summary = files.convert(new File(input), output);
+		}
+		System.out.println(summary);
+		if (summary.getFailed() > 0) {
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import sirius.utils.domino.ConversionLimits.Limit;
+
+/**
+ * HTML produced by a conversion together with the stylesheet its class
+ * attributes refer to. The stylesheet is empty unless
+ * {@link RichText2Html#USE_CSS_CLASSES} is set.
+ */
+public final class RichText2HtmlResult {
+
+	public enum Status {
+		/** The rich text was converted completely. */
+		COMPLETE,
+		/** Part of the rich text was left out to stay within a limit. */
+		TRUNCATED,
+		/** A limit stopped the conversion; the HTML is the unformatted text. */
+		ABORTED,
+		/**
+		 * An error stopped the conversion, e.g. malformed DXL; the HTML is
+		 * the unformatted text.
+		 */
+		FAILED
+	}
+
+	private final String html;
+	private final String css;
+	private final Status status;
+	private final Limit limit;
+
+	RichText2HtmlResult(String html, String css) {
+		this(html, css, Status.COMPLETE, null);
+	}
+
+	RichText2HtmlResult(String html, String css, Status status, Limit limit) {
+		this.html = html;
+		this.css = css;
+		this.status = status;
+		this.limit = limit;
+	}
+
+	public String getHtml() {
+		return html;
+	}
+
+	public String getCss() {
+		return css;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns the limit that truncated or aborted the conversion, or null if
+	 * it is complete or failed.
+	 */
+	public Limit getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Returns the HTML preceded by a style element holding the stylesheet,
+	 * or just the HTML if there is no stylesheet.
+	 */
+	public String getStyledHtml() {
+		if (css.length() == 0) {
+			return html;
+		}
+		return "<style type=\"text/css\">\n" + css + "</style>" + html;
+	}
+
+	/**
+	 * Writes what getStyledHtml() returns without building it as one string.
+	 */
+	void writeStyledHtml(Writer out) throws IOException {
+		if (css.length() > 0) {
+			out.write("<style type=\"text/css\">\n");
+			out.write(css);
+			out.write("</style>");
+		}
+		out.write(html);
+	}
+
+	public String toString() {
+		return getStyledHtml();
+	}
+
+}
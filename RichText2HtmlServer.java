@@ -0,0 +1,432 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import sirius.utils.domino.RichText2HtmlResult.Status;
+
+/**
+ * Serves conversions over HTTP, so systems without a Notes client can use
+ * them. Endpoints:
+ * <ul>
+ * <li>POST /convert: the body is rich text DXL, a &lt;richtext&gt; element,
+ * or an exported note whose rich text item is chosen with ?item=name (the
+ * first one by default). ?options= takes option names or a number, e.g.
+ * USE_INLINE_STYLES. The X-Conversion-Status header tells whether limits
+ * cut the HTML short, and DXL that cannot be converted is answered with
+ * 422. As both are only known at the end of a conversion, the HTML is sent
+ * chunked once it is complete rather than while it is produced; the
+ * converter's limits bound its size.</li>
+ * <li>GET /health</li>
+ * <li>GET /metrics: request counts by status and latency percentiles of
+ * the most recent conversion requests by status, in the Prometheus text
+ * format.</li>
+ * </ul>
+ * Requests are handled on virtual threads where the JDK has them.
+ */
+public final class RichText2HtmlServer implements Closeable {
+
+	private static final String UTF8 = "UTF-8";
+	private static final int LATENCY_SAMPLES = 4096;
+	private static final long LATENCY_MASK = (1L << 48) - 1;
+
+	private final RichText2HtmlConverter converter;
+	private final long maxRequestBytes;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final ConcurrentMap<Integer, AtomicLong> responses = new ConcurrentHashMap<Integer, AtomicLong>();
+	private final AtomicLong inFlight = new AtomicLong();
+	/**
+	 * The last conversion requests, a ring buffer of the response status in
+	 * the top 16 bits and the latency in nanoseconds below.
+	 */
+	private final AtomicLongArray latencies = new AtomicLongArray(
+			LATENCY_SAMPLES);
+	private final AtomicLong conversions = new AtomicLong();
+	private final ConcurrentMap<Integer, AtomicLong> conversionResponses = new ConcurrentHashMap<Integer, AtomicLong>();
+
+	public RichText2HtmlServer(RichText2HtmlConverter converter,
+			InetSocketAddress address, long maxRequestBytes)
+			throws IOException {
+		this.converter = converter;
+		this.maxRequestBytes = maxRequestBytes;
+		ExecutorService executor = RichText2HtmlConverter
+				.newVirtualThreadExecutor();
+		this.executor = executor == null ? Executors.newCachedThreadPool()
+				: executor;
+		server = HttpServer.create(address, 0);
+		server.setExecutor(this.executor);
+		server.createContext("/convert", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				convert(exchange);
+			}
+		});
+		server.createContext("/health", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "text/plain", "OK\n");
+			}
+		});
+		server.createContext("/metrics", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange, 200, "text/plain; version=0.0.4",
+						getMetrics());
+			}
+		});
+	}
+
+	public void start() {
+		server.start();
+	}
+
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * Stops accepting requests and waits up to a second for running ones.
+	 */
+	public void close() {
+		server.stop(1);
+		executor.shutdown();
+	}
+
+	private void convert(HttpExchange exchange) throws IOException {
+		long start = System.nanoTime();
+		boolean post = exchange.getRequestMethod().equals("POST");
+		inFlight.incrementAndGet();
+		try {
+			if (!post) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				respond(exchange, 405, "text/plain", "POST only\n");
+				return;
+			}
+			Map<String, String> query = parseQuery(exchange.getRequestURI()
+					.getRawQuery());
+			RichText2HtmlConverter converter;
+			try {
+				converter = this.converter.withOptions(parseOptions(query
+						.get("options")));
+			} catch (IllegalArgumentException e) {
+				respond(exchange, 400, "text/plain", e.getMessage() + "\n");
+				return;
+			}
+			String dxl = readBody(exchange);
+			if (dxl == null) {
+				respond(exchange, 413, "text/plain", "request exceeds "
+						+ maxRequestBytes + " bytes\n");
+				return;
+			}
+
+			RichText2HtmlResult result;
+			if (isNote(dxl)) {
+				try {
+					result = selectItem(converter.convertItems(dxl), query
+							.get("item"));
+				} catch (LimitExceededException e) {
+					result = new RichText2HtmlResult("", "", Status.ABORTED, e
+							.getLimit());
+				} catch (Exception e) {
+					respond(exchange, 422, "text/plain", "cannot convert: "
+							+ e + "\n");
+					return;
+				}
+				if (result == null) {
+					respond(exchange, 404, "text/plain",
+							"no such rich text item\n");
+					return;
+				}
+			} else {
+				result = converter.convert(unwrapRichText(dxl), "");
+				if (result.getStatus() == Status.FAILED) {
+					respond(exchange, 422, "text/plain",
+							"cannot convert the rich text\n");
+					return;
+				}
+			}
+
+			exchange.getResponseHeaders().set("Content-Type",
+					"text/html; charset=UTF-8");
+			exchange.getResponseHeaders().set("X-Conversion-Status",
+					result.getStatus().name());
+			if (result.getLimit() != null) {
+				exchange.getResponseHeaders().set("X-Conversion-Limit",
+						result.getLimit().name());
+			}
+			exchange.sendResponseHeaders(200, 0);
+			count(200);
+			Writer out = new OutputStreamWriter(exchange.getResponseBody(),
+					UTF8);
+			try {
+				result.writeStyledHtml(out);
+			} finally {
+				out.close();
+			}
+		} finally {
+			inFlight.decrementAndGet();
+			exchange.close();
+			if (post) {
+				record(exchange.getResponseCode(), System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * Returns the request body, or null if it is larger than allowed.
+	 */
+	private String readBody(HttpExchange exchange) throws IOException {
+		String length = exchange.getRequestHeaders().getFirst(
+				"Content-Length");
+		if (length != null) {
+			try {
+				if (Long.parseLong(length.trim()) > maxRequestBytes) {
+					return null;
+				}
+			} catch (NumberFormatException e) {
+				// read it and count
+			}
+		}
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) >= 0) {
+			if (body.size() + n > maxRequestBytes) {
+				return null;
+			}
+			body.write(buffer, 0, n);
+		}
+		return body.toString(UTF8);
+	}
+
+	private static boolean isNote(String dxl) {
+		int pos = dxl.indexOf('<');
+		while (pos >= 0 && pos + 1 < dxl.length()
+				&& (dxl.charAt(pos + 1) == '?' || dxl.charAt(pos + 1) == '!')) {
+			pos = dxl.indexOf('<', pos + 1);
+		}
+		return pos >= 0
+				&& (dxl.startsWith("<document", pos) || dxl.startsWith(
+						"<item", pos));
+	}
+
+	private static RichText2HtmlResult selectItem(
+			Map<String, RichText2HtmlResult> items, String name) {
+		if (name != null) {
+			return items.get(name);
+		}
+		Iterator<RichText2HtmlResult> results = items.values().iterator();
+		return results.hasNext() ? results.next() : null;
+	}
+
+	/**
+	 * Strips a &lt;richtext&gt; element around the DXL, if there is one.
+	 */
+	static String unwrapRichText(String dxl) {
+		String trimmed = dxl.trim();
+		if (trimmed.startsWith("<richtext")) {
+			int start = trimmed.indexOf('>');
+			int end = trimmed.lastIndexOf("</richtext>");
+			if (start > 0 && end > start) {
+				return trimmed.substring(start + 1, end);
+			}
+		}
+		return dxl;
+	}
+
+	static int parseOptions(String value) {
+		if (value == null || value.length() == 0) {
+			return RichText2Html.ALL_OPTIONS_OFF;
+		}
+		int options = 0;
+		for (String option : value.split(",")) {
+			option = option.trim();
+			if (option.equals("USE_INLINE_STYLES")) {
+				options |= RichText2Html.USE_INLINE_STYLES;
+			} else if (option.equals("USE_CSS_CLASSES")) {
+				options |= RichText2Html.USE_CSS_CLASSES;
+			} else if (option.equals("ALL_OPTIONS_OFF")) {
+				options |= RichText2Html.ALL_OPTIONS_OFF;
+			} else {
+				try {
+					options |= Integer.parseInt(option);
+				} catch (NumberFormatException e) {
+					throw new IllegalArgumentException("unknown option: "
+							+ option);
+				}
+			}
+		}
+		return options;
+	}
+
+	private static Map<String, String> parseQuery(String query)
+			throws IOException {
+		Map<String, String> params = new HashMap<String, String>();
+		if (query == null) {
+			return params;
+		}
+		for (String param : query.split("&")) {
+			int pos = param.indexOf('=');
+			if (pos > 0) {
+				params.put(URLDecoder.decode(param.substring(0, pos), UTF8),
+						URLDecoder.decode(param.substring(pos + 1), UTF8));
+			}
+		}
+		return params;
+	}
+
+	private void respond(HttpExchange exchange, int status,
+			String contentType, String text) throws IOException {
+		byte[] body = text.getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type",
+				contentType + "; charset=UTF-8");
+		exchange.sendResponseHeaders(status, body.length);
+		count(status);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(body);
+		} finally {
+			out.close();
+		}
+	}
+
+	private void count(int status) {
+		count(responses, status);
+	}
+
+	private static void count(ConcurrentMap<Integer, AtomicLong> counters,
+			int status) {
+		AtomicLong counter = counters.get(status);
+		if (counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = counters.putIfAbsent(status, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	/**
+	 * Records the latency of a conversion request answered with status.
+	 * Requests whose connection failed before a response are not counted.
+	 */
+	private void record(int status, long nanos) {
+		if (status < 0) {
+			return;
+		}
+		count(conversionResponses, status);
+		long n = conversions.getAndIncrement();
+		latencies.set((int) (n % LATENCY_SAMPLES), (long) status << 48
+				| Math.min(nanos, LATENCY_MASK));
+	}
+
+	String getMetrics() {
+		StringBuilder metrics = new StringBuilder();
+		metrics.append("# TYPE richtext2html_responses_total counter\n");
+		for (Map.Entry<Integer, AtomicLong> entry : responses.entrySet()) {
+			metrics.append("richtext2html_responses_total{status=\"").append(
+					entry.getKey()).append("\"} ").append(
+					entry.getValue().get()).append('\n');
+		}
+		metrics.append("# TYPE richtext2html_in_flight gauge\n");
+		metrics.append("richtext2html_in_flight ").append(inFlight.get())
+				.append('\n');
+
+		int count = (int) Math.min(conversions.get(), LATENCY_SAMPLES);
+		Map<Integer, List<Long>> samples = new TreeMap<Integer, List<Long>>();
+		for (int i = 0; i < count; i++) {
+			long sample = latencies.get(i);
+			int status = (int) (sample >>> 48);
+			List<Long> latency = samples.get(status);
+			if (latency == null) {
+				latency = new ArrayList<Long>();
+				samples.put(status, latency);
+			}
+			latency.add(sample & LATENCY_MASK);
+		}
+		metrics.append("# TYPE richtext2html_latency_seconds summary\n");
+		for (Map.Entry<Integer, List<Long>> entry : samples.entrySet()) {
+			List<Long> latency = entry.getValue();
+			Collections.sort(latency);
+			for (double quantile : new double[] { 0.5, 0.9, 0.99, 1 }) {
+				double seconds = latency.get((int) Math.ceil(quantile
+						* latency.size()) - 1) / 1e9;
+				metrics.append("richtext2html_latency_seconds{status=\"")
+						.append(entry.getKey()).append("\",quantile=\"")
+						.append(quantile).append("\"} ").append(seconds)
+						.append('\n');
+			}
+		}
+		for (Map.Entry<Integer, AtomicLong> entry : new TreeMap<Integer, AtomicLong>(
+				conversionResponses).entrySet()) {
+			metrics.append("richtext2html_latency_seconds_count{status=\"")
+					.append(entry.getKey()).append("\"} ").append(
+							entry.getValue().get()).append('\n');
+		}
+		return metrics.toString();
+	}
+
+	/**
+	 * Usage: RichText2HtmlServer [port] [max request bytes]. Defaults to
+	 * port 8080 and 16 MB. Conversions are limited to the request size, 30
+	 * seconds, 100000 table cells and a nesting depth of 256.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+		long maxRequestBytes = args.length > 1 ? Long.parseLong(args[1])
+				: 16L << 20;
+		ConversionLimits limits = ConversionLimits.NONE.withMaxInputLength(
+				maxRequestBytes).withTimeout(30, TimeUnit.SECONDS)
+				.withMaxTableCells(100000).withMaxDepth(256);
+		RichText2HtmlServer server = new RichText2HtmlServer(
+				new RichText2HtmlConverter().withLimits(limits),
+				new InetSocketAddress(port), maxRequestBytes);
+		server.start();
+		System.out.println("Listening on " + server.getAddress());
+	}
+
+}
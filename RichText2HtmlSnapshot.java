@@ -0,0 +1,126 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The result of a block-wise conversion together with the fingerprint and
+ * HTML of every top-level block (a paragraph or list, a table, a section).
+ * Passing it to the next conversion of the same rich text lets the
+ * converter reuse the HTML of the blocks that did not change.
+ */
+public final class RichText2HtmlSnapshot {
+
+	private final int options;
+	private final Map<String, ElementHandler> handlers;
+	private final StyleSheet classNames;
+	private final long[] fingerprints;
+	private final long[] lengths;
+	private final String[] html;
+	private final String[] css;
+	private final int reused;
+	private final RichText2HtmlResult result;
+	private final Map<Long, Integer> index = new HashMap<Long, Integer>();
+
+	/**
+	 * @param classNames the stylesheet that named the classes of all blocks
+	 */
+	RichText2HtmlSnapshot(int options, Map<String, ElementHandler> handlers,
+			StyleSheet classNames, long[] fingerprints, long[] lengths,
+			String[] html, String[] css, int reused) {
+		this.options = options;
+		this.handlers = handlers;
+		this.classNames = classNames;
+		this.fingerprints = fingerprints;
+		this.lengths = lengths;
+		this.html = html;
+		this.css = css;
+		this.reused = reused;
+
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < fingerprints.length; i++) {
+			index.put(fingerprints[i], i);
+			text.append(html[i]);
+		}
+		this.result = new RichText2HtmlResult(text.toString(), StyleSheet
+				.merge(css));
+	}
+
+	/**
+	 * A snapshot without blocks, for a conversion that fell back to plain
+	 * text. Nothing can be reused from it.
+	 */
+	RichText2HtmlSnapshot(int options, Map<String, ElementHandler> handlers,
+			RichText2HtmlResult result) {
+		this.options = options;
+		this.handlers = handlers;
+		this.classNames = new StyleSheet();
+		this.fingerprints = new long[0];
+		this.lengths = new long[0];
+		this.html = new String[0];
+		this.css = new String[0];
+		this.reused = 0;
+		this.result = result;
+	}
+
+	public RichText2HtmlResult getResult() {
+		return result;
+	}
+
+	public int getBlockCount() {
+		return fingerprints.length;
+	}
+
+	/**
+	 * Returns how many blocks were taken from the previous snapshot instead
+	 * of being converted.
+	 */
+	public int getReusedBlockCount() {
+		return reused;
+	}
+
+	/**
+	 * Blocks can only be reused by a converter with the same options and
+	 * element handlers.
+	 */
+	boolean isCompatible(int options, Map<String, ElementHandler> handlers) {
+		return this.options == options && this.handlers == handlers;
+	}
+
+	StyleSheet getClassNames() {
+		return classNames;
+	}
+
+	int indexOf(long fingerprint, long length) {
+		Integer i = index.get(fingerprint);
+		return i == null || lengths[i] != length ? -1 : i.intValue();
+	}
+
+	String getHtml(int block) {
+		return html[block];
+	}
+
+	String getCss(int block) {
+		return css[block];
+	}
+
+}
@@ -0,0 +1,1008 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import sirius.utils.domino.RichText2Html.ParDef;
+
+/**
+ * Converts rich text DXL to HTML in a single forward pass over StAX events.
+ * Only the open elements, the pardefs and the table rows still waiting for
+ * their rowspans to resolve are kept in memory.
+ */
+final class RichText2HtmlStreamer implements XMLStreamConstants {
+
+	private final XMLStreamReader reader;
+	private final XMLOutputFactory outputFactory;
+	private final int options;
+	private final ParDefCache parDefCache;
+	private final ImageStore imageStore;
+
+	private final Map<String, ParDef> parDefs = new HashMap<String, ParDef>();
+	private final Random random = new Random();
+	private final StyleSheet styleSheet = new StyleSheet();
+
+	private XMLStreamWriter out;
+	private Writer sink;
+
+	RichText2HtmlStreamer(XMLStreamReader reader,
+			XMLOutputFactory outputFactory, Writer html, int options,
+			ParDefCache parDefCache, ImageStore imageStore)
+			throws XMLStreamException {
+		this.reader = reader;
+		this.outputFactory = outputFactory;
+		this.options = options;
+		this.parDefCache = parDefCache;
+		this.imageStore = imageStore;
+		this.sink = new NonFlushingWriter(html);
+		this.out = outputFactory.createXMLStreamWriter(sink);
+	}
+
+	static Reader wrapFragment(Reader dxl) {
+		return new FragmentReader(dxl);
+	}
+
+	static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+		return factory;
+	}
+
+	/**
+	 * Converts the content of the element the reader is positioned on, up to
+	 * and including its end tag. With USE_CSS_CLASSES the stylesheet is only
+	 * complete at the end, so it is written after the HTML.
+	 */
+	void convert() throws XMLStreamException {
+		content();
+		if (!styleSheet.isEmpty()) {
+			raw("<style type=\"text/css\">\n" + styleSheet.toCss()
+					+ "</style>");
+		}
+		flush();
+	}
+
+	private void content() throws XMLStreamException {
+		content(reader.next());
+	}
+
+	private void content(int event) throws XMLStreamException {
+		Block block = new Block();
+		if (event(event, block)) {
+			while (event(reader.next(), block)) {
+			}
+		}
+		block.closeList();
+	}
+
+	private boolean event(int event, Block block) throws XMLStreamException {
+		switch (event) {
+		case START_ELEMENT:
+			element(block);
+			return true;
+		case CHARACTERS:
+		case SPACE:
+		case CDATA:
+			if (block.listId != null && reader.isWhiteSpace()) {
+				block.whitespace.append(reader.getTextCharacters(), reader
+						.getTextStart(), reader.getTextLength());
+			} else {
+				block.closeList();
+				out.writeCharacters(reader.getTextCharacters(), reader
+						.getTextStart(), reader.getTextLength());
+			}
+			return true;
+		case COMMENT:
+			block.closeList();
+			out.writeComment(reader.getText());
+			return true;
+		case END_ELEMENT:
+		case END_DOCUMENT:
+			return false;
+		default:
+			return true;
+		}
+	}
+
+	private void element(Block block) throws XMLStreamException {
+		String name = reader.getLocalName();
+		if (name.equals("par")) {
+			par(block);
+			return;
+		}
+
+		block.closeList();
+		if (name.equals("pardef")) {
+			pardef();
+		} else if (name.equals("break")) {
+			voidElement("br", new TreeMap<String, String>());
+			skip();
+		} else if (name.equals("run")) {
+			run();
+		} else if (name.equals("horizrule")) {
+			rule();
+		} else if (name.equals("section")) {
+			section();
+		} else if (name.equals("urllink")) {
+			urlLink();
+		} else if (name.equals("popup")) {
+			popup();
+		} else if (name.equals("button")) {
+			button();
+		} else if (name.equals("actionhotspot")) {
+			actionHotspot();
+		} else if (name.equals("table")) {
+			table();
+		} else if (name.equals("picture")) {
+			picture();
+		} else if (name.equals("computedtext")) {
+			skip();
+		} else if (name.equals("richtext")) {
+			content();
+		} else {
+			out.writeStartElement(name);
+			for (int i = 0; i < reader.getAttributeCount(); i++) {
+				out.writeAttribute(reader.getAttributeLocalName(i), reader
+						.getAttributeValue(i));
+			}
+			content();
+			out.writeEndElement();
+		}
+	}
+
+	private void pardef() throws XMLStreamException {
+		String id = attribute("id");
+		if (id != null) {
+			parDefs.put(id, parDefCache.get(attribute("list"),
+					attribute("align"), attribute("leftmargin"),
+					attribute("spaceafter"), attribute("newpage")));
+		}
+		skip();
+	}
+
+	private void par(Block block) throws XMLStreamException {
+		String id = attribute("def");
+		ParDef def = id == null ? null : parDefs.get(id);
+
+		if (def != null && def.kind == ParDef.LIST) {
+			if (!id.equals(block.listId)) {
+				block.closeList();
+				out.writeStartElement(RichText2Html.getListTag(def));
+				style(RichText2Html.getListStyle(def));
+				block.listId = id;
+			}
+			out.writeStartElement("li");
+			content();
+			out.writeEndElement();
+			return;
+		}
+
+		block.closeList();
+		int event = reader.next();
+		boolean empty = event == END_ELEMENT;
+		String style = def == null ? "" : RichText2Html.getParagraphStyle(def,
+				!empty);
+		boolean styled = isUseStyles() && style.length() > 0;
+		if (empty && !styled) {
+			voidElement("br", new TreeMap<String, String>());
+			return;
+		}
+		out.writeStartElement("p");
+		if (styled) {
+			applyStyle(style);
+		}
+		if (!empty) {
+			content(event);
+		}
+		out.writeEndElement();
+	}
+
+	private void run() throws XMLStreamException {
+		String tag = null;
+		String style = "";
+		String highlight = attribute("highlight");
+		if ("true".equals(attribute("html"))) {
+			tag = "code";
+			style += RichText2Html.getHighlightStyle(highlight, true);
+		} else if (highlight != null) {
+			tag = "span";
+			style += RichText2Html.getHighlightStyle(highlight, false);
+		}
+
+		List<String> wrappers = new ArrayList<String>();
+		boolean font = false;
+		int event = reader.next();
+		if (event == START_ELEMENT && reader.getLocalName().equals("font")) {
+			font = true;
+			String fontStyle = attribute("style");
+			if (fontStyle != null) {
+				if (fontStyle.indexOf("italic") >= 0) {
+					wrappers.add("i");
+					style += "font-style:italic;";
+				}
+				if (fontStyle.indexOf("bold") >= 0) {
+					wrappers.add("strong");
+					style += "font-weight:bold;";
+				}
+				if (fontStyle.indexOf("underline") >= 0) {
+					wrappers.add("u");
+				}
+				if (fontStyle.indexOf("strikethrough") >= 0) {
+					wrappers.add("del");
+				}
+				if (fontStyle.indexOf("superscript") >= 0) {
+					wrappers.add("sup");
+				}
+				if (fontStyle.indexOf("subscript") >= 0) {
+					wrappers.add("sub");
+				}
+			}
+			String value = attribute("color");
+			if (value != null) {
+				style += "color:" + value + ";";
+			}
+			value = attribute("size");
+			if (value != null) {
+				style += "font-size:" + value + ";";
+			}
+			value = attribute("name");
+			if (value != null) {
+				style += "font-family:" + value + ";";
+			}
+			skip();
+			event = reader.next();
+		}
+
+		if (tag == null && wrappers.isEmpty() && (!font || style.length() > 0)) {
+			tag = "span";
+		}
+		int opened = 0;
+		if (tag != null) {
+			out.writeStartElement(tag);
+			opened++;
+		}
+		for (int i = wrappers.size() - 1; i >= 0; i--) {
+			if (opened == 1) {
+				style(style);
+			}
+			out.writeStartElement(wrappers.get(i));
+			opened++;
+		}
+		if (opened == 1) {
+			style(style);
+		}
+		content(event);
+		for (int i = 0; i < opened; i++) {
+			out.writeEndElement();
+		}
+	}
+
+	private void rule() throws XMLStreamException {
+		Map<String, String> attributes = new TreeMap<String, String>();
+		style(attributes, RichText2Html.getRuleStyle(attribute("height"),
+				attribute("width"), attribute("color")));
+		skip();
+		voidElement("hr", attributes);
+	}
+
+	private void section() throws XMLStreamException {
+		String coverId = Long.toString(Math.abs(random.nextLong()), 36);
+		String title = "";
+
+		int event = reader.next();
+		while (isWhiteSpace(event)) {
+			event = reader.next();
+		}
+		if (event == START_ELEMENT
+				&& reader.getLocalName().equals("sectiontitle")) {
+			title = text();
+			event = reader.next();
+		}
+
+		out.writeStartElement("div");
+		out.writeStartElement("div");
+		out.writeAttribute("onclick", "var sec=document.getElementById('"
+				+ coverId
+				+ "');if(sec.style.display=='none'){sec.style.display='block'}else{sec.style.display='none'}");
+		applyStyle("padding-left:5px;border-left:solid 5px teal;border-bottom:solid 1px teal;cursor:pointer;cursor:hand;");
+		out.writeCharacters(title);
+		out.writeEndElement();
+
+		out.writeStartElement("div");
+		out.writeAttribute("id", coverId);
+		out.writeAttribute("style", "display:none;");
+		content(event);
+		voidElement("br", new TreeMap<String, String>());
+		out.writeEndElement();
+		out.writeEndElement();
+	}
+
+	private void urlLink() throws XMLStreamException {
+		String href = attribute("href");
+		String target = attribute("targetframe");
+		String style = "";
+		if ("true".equals(attribute("showborder"))) {
+			style += "border:solid 1px teal;";
+		}
+
+		StringBuilder leading = new StringBuilder();
+		int event = reader.next();
+		while (isWhiteSpace(event)) {
+			leading.append(reader.getText());
+			event = reader.next();
+		}
+		if (event == START_ELEMENT && reader.getLocalName().equals("code")) {
+			String formula = formula();
+			if (formula != null) {
+				href = formula.toLowerCase().replace("\"", "");
+			}
+			event = reader.next();
+		}
+
+		out.writeStartElement("a");
+		if (href != null) {
+			out.writeAttribute("href", href);
+		}
+		if (target != null) {
+			out.writeAttribute("target", target);
+		}
+		style(style);
+		out.writeCharacters(leading.toString());
+		content(event);
+		out.writeEndElement();
+	}
+
+	private void popup() throws XMLStreamException {
+		String popupId = Long.toString(Math.abs(random.nextLong()), 36);
+		String style = "cursor:pointer;cursor:hand;";
+		String kind = attribute("hotspotstyle");
+		if (kind == null) {
+			style += "border:solid 1px teal;";
+		} else if (kind.equals("highlight")) {
+			style += "background-color:Lemonchiffon;";
+		} else if (!kind.equals("none")) {
+			style += "border:solid 1px teal;";
+		}
+		String event = "onclick".equals(attribute("show")) ? "onclick"
+				: "onmouseover";
+
+		out.writeStartElement("span");
+		out.writeStartElement("span");
+		out.writeAttribute(event, "var cover=document.getElementById('"
+				+ popupId + "');cover.style.display='block';");
+		out.writeAttribute("onmouseout", "var cover=document.getElementById('"
+				+ popupId + "');cover.style.display='none';");
+		style(style);
+
+		String cover = "";
+		Block block = new Block();
+		int next;
+		while ((next = reader.next()) != END_ELEMENT) {
+			if (next == START_ELEMENT
+					&& reader.getLocalName().equals("popuptext")) {
+				block.closeList();
+				cover = capture();
+			} else if (next == START_ELEMENT
+					&& reader.getLocalName().equals("code")) {
+				skip();
+			} else {
+				event(next, block);
+			}
+		}
+		block.closeList();
+		out.writeEndElement();
+
+		out.writeStartElement("span");
+		out.writeAttribute("id", popupId);
+		applyStyle("display:none;margin: 10px;border:solid 1px teal;width:300px;height:50px;");
+		raw(cover);
+		out.writeEndElement();
+		out.writeEndElement();
+	}
+
+	private void button() throws XMLStreamException {
+		String width = attribute("width");
+		if ("fitcontent".equals(attribute("widthtype"))) {
+			width = "auto";
+		}
+
+		StringBuilder text = new StringBuilder();
+		int depth = 0;
+		while (true) {
+			int event = reader.next();
+			if (event == START_ELEMENT) {
+				depth++;
+			} else if (event == END_ELEMENT) {
+				if (depth-- == 0) {
+					break;
+				}
+			} else if (depth == 0
+					&& (event == CHARACTERS || event == SPACE || event == CDATA)) {
+				text.append(reader.getTextCharacters(), reader.getTextStart(),
+						reader.getTextLength());
+			}
+		}
+
+		Map<String, String> attributes = new TreeMap<String, String>();
+		attributes.put("type", "button");
+		attributes.put("value", text.toString());
+		if (width != null && width.length() > 0) {
+			style(attributes, "width:" + width + ";");
+		}
+		voidElement("input", attributes);
+	}
+
+	private void actionHotspot() throws XMLStreamException {
+		out.writeStartElement("span");
+		if (!"none".equals(attribute("hotspotstyle"))) {
+			style("border:solid 1px teal;");
+		}
+		content();
+		out.writeEndElement();
+	}
+
+	private void table() throws XMLStreamException {
+		String widthType = attribute("widthtype");
+		if (widthType == null) {
+			widthType = "";
+		}
+		String refWidth = attribute("refwidth");
+		String style = RichText2Html.getTableStyle(widthType,
+				refWidth == null ? "" : refWidth, attribute("leftmargin"));
+		Table table = new Table(new TableLayout(attribute("cellbordercolor"),
+				attribute("cellborderstyle")));
+
+		boolean center = widthType.equals("fixedcenter");
+		if (center) {
+			out.writeStartElement("center");
+			out.writeAttribute("table", "true");
+		}
+		out.writeStartElement("table");
+		out.writeAttribute("cellpadding", "0");
+		out.writeAttribute("cellspacing", "0");
+		style(style);
+
+		int event;
+		while ((event = reader.next()) != END_ELEMENT) {
+			if (event != START_ELEMENT) {
+				continue;
+			}
+			String name = reader.getLocalName();
+			if (name.equals("tablecolumn")) {
+				table.layout.addColumn(attribute("width"));
+				skip();
+			} else if (name.equals("tablerow")) {
+				tableRow(table);
+			} else {
+				skip();
+			}
+		}
+		table.flush(true);
+
+		out.writeEndElement();
+		if (center) {
+			out.writeEndElement();
+		}
+	}
+
+	private void tableRow(Table table) throws XMLStreamException {
+		TableLayout layout = table.layout;
+		Row row = new Row(++layout.rowCount);
+		table.flush(false);
+		int cellNo = 0;
+
+		int event;
+		while ((event = reader.next()) != END_ELEMENT) {
+			if (event != START_ELEMENT) {
+				continue;
+			}
+			if (!reader.getLocalName().equals("tablecell")) {
+				skip();
+				continue;
+			}
+			cellNo = layout.nextFreeColumn(row.rowNo, cellNo + 1);
+
+			Cell cell = new Cell(cellNo);
+			cell.rowspan = attribute("rowspan");
+			cell.colspan = attribute("columnspan");
+			cell.borderWidth = attribute("borderwidth");
+			int rowspan = layout.getRowspan(cell.rowspan);
+			int colspan = layout.getColspan(cellNo, cell.colspan);
+			layout.span(row.rowNo, cellNo, rowspan, colspan);
+			row.rowsNeeded = Math.max(row.rowsNeeded, rowspan);
+			cell.rowspanValue = rowspan;
+			cell.lastCell = layout.isLastCell(cellNo, colspan);
+
+			cell.html = capture();
+			row.cells.add(cell);
+		}
+
+		layout.release(row.rowNo);
+		table.pending.add(row);
+	}
+
+	private void writeRow(TableLayout layout, Row row)
+			throws XMLStreamException {
+		out.writeStartElement("tr");
+		for (Cell cell : row.cells) {
+			boolean lastRow = layout.isLastRow(row.rowNo, cell.rowspanValue);
+			String width = layout.getColumnWidth(cell.cellNo);
+
+			String style = RichText2Html.getCellStyle(
+					cell.borderWidth == null ? "" : cell.borderWidth,
+					layout.borderStyle, layout.borderColor, lastRow,
+					cell.lastCell, width);
+			// attributes in the alphabetical order the DOM path writes
+			boolean classFirst = isOptionSet(RichText2Html.USE_CSS_CLASSES);
+			out.writeStartElement("td");
+			if (classFirst) {
+				style(style);
+			}
+			if (cell.colspan != null) {
+				out.writeAttribute("colspan", cell.colspan);
+			}
+			if (cell.rowspan != null) {
+				out.writeAttribute("rowspan", cell.rowspan);
+			}
+			if (!classFirst) {
+				style(style);
+			}
+			raw(cell.html);
+			out.writeEndElement();
+		}
+		out.writeEndElement();
+	}
+
+	private String formula() throws XMLStreamException {
+		String formula = null;
+		int depth = 0;
+		boolean inFormula = false;
+		while (true) {
+			int event = reader.next();
+			if (event == START_ELEMENT) {
+				depth++;
+				if (depth == 1 && reader.getLocalName().equals("formula")
+						&& formula == null) {
+					inFormula = true;
+					formula = "";
+				}
+			} else if (event == END_ELEMENT) {
+				if (depth-- == 0) {
+					return formula;
+				}
+				if (depth == 0) {
+					inFormula = false;
+				}
+			} else if (inFormula
+					&& (event == CHARACTERS || event == SPACE || event == CDATA)) {
+				formula += reader.getText();
+			}
+		}
+	}
+
+	private String text() throws XMLStreamException {
+		StringBuilder text = new StringBuilder();
+		int depth = 0;
+		while (true) {
+			int event = reader.next();
+			if (event == START_ELEMENT) {
+				depth++;
+			} else if (event == END_ELEMENT) {
+				if (depth-- == 0) {
+					return text.toString();
+				}
+			} else if (event == CHARACTERS || event == SPACE || event == CDATA) {
+				text.append(reader.getTextCharacters(), reader.getTextStart(),
+						reader.getTextLength());
+			}
+		}
+	}
+
+	/**
+	 * Decodes the first gif, jpeg or png payload of the picture into the
+	 * image store while it is being read, one text event at a time.
+	 */
+	private void picture() throws XMLStreamException {
+		if (imageStore == null) {
+			skip();
+			return;
+		}
+		String width = RichText2Html.getPixels(attribute("width"));
+		String height = RichText2Html.getPixels(attribute("height"));
+		String alt = attribute("alttext");
+		String src = null;
+		int depth = 0;
+		while (true) {
+			int event = reader.next();
+			if (event == START_ELEMENT) {
+				if (src == null && depth == 0
+						&& RichText2Html.isImageFormat(reader.getLocalName())) {
+					src = image(reader.getLocalName());
+				} else {
+					depth++;
+				}
+			} else if (event == END_ELEMENT && depth-- == 0) {
+				break;
+			}
+		}
+		if (src != null) {
+			Map<String, String> attributes = new TreeMap<String, String>();
+			attributes.put("src", src);
+			if (width != null) {
+				attributes.put("width", width);
+			}
+			if (height != null) {
+				attributes.put("height", height);
+			}
+			if (alt != null) {
+				attributes.put("alt", alt);
+			}
+			voidElement("img", attributes);
+		}
+	}
+
+	private String image(String format) throws XMLStreamException {
+		TextInputStream text = new TextInputStream();
+		try {
+			String src = imageStore.store(format, Base64.getMimeDecoder()
+					.wrap(text));
+			text.skipToEnd();
+			return src;
+		} catch (IOException e) {
+			if (e.getCause() instanceof XMLStreamException) {
+				throw (XMLStreamException) e.getCause();
+			}
+			throw new XMLStreamException(e);
+		}
+	}
+
+	private void skip() throws XMLStreamException {
+		int depth = 0;
+		while (true) {
+			int event = reader.next();
+			if (event == START_ELEMENT) {
+				depth++;
+			} else if (event == END_ELEMENT && depth-- == 0) {
+				return;
+			}
+		}
+	}
+
+	private String capture() throws XMLStreamException {
+		XMLStreamWriter savedOut = out;
+		Writer savedSink = sink;
+		StringWriter buffer = new StringWriter();
+		sink = buffer;
+		out = outputFactory.createXMLStreamWriter(buffer);
+		try {
+			content();
+			flush();
+		} finally {
+			out = savedOut;
+			sink = savedSink;
+		}
+		return buffer.toString();
+	}
+
+	private void raw(String html) throws XMLStreamException {
+		flush();
+		try {
+			sink.write(html);
+		} catch (IOException e) {
+			throw new XMLStreamException(e);
+		}
+	}
+
+	/**
+	 * Writes a void element without an end tag, as the DOM path does, with
+	 * its attributes in the alphabetical order the DOM keeps them in.
+	 */
+	private void voidElement(String name, Map<String, String> attributes)
+			throws XMLStreamException {
+		flush();
+		try {
+			HtmlSerializer.writeVoidElement(name, attributes, sink);
+		} catch (IOException e) {
+			throw new XMLStreamException(e);
+		}
+	}
+
+	/**
+	 * Flushes the writer, closing a start tag it still holds open for
+	 * attributes first.
+	 */
+	private void flush() throws XMLStreamException {
+		out.writeCharacters("");
+		out.flush();
+	}
+
+	private void style(String style) throws XMLStreamException {
+		if (isUseStyles() && style.length() > 0) {
+			applyStyle(style);
+		}
+	}
+
+	private void style(Map<String, String> attributes, String style) {
+		if (isUseStyles() && style.length() > 0) {
+			if (isOptionSet(RichText2Html.USE_CSS_CLASSES)) {
+				attributes.put("class", styleSheet.getClassName(style));
+			} else {
+				attributes.put("style", style);
+			}
+		}
+	}
+
+	private void applyStyle(String style) throws XMLStreamException {
+		if (isOptionSet(RichText2Html.USE_CSS_CLASSES)) {
+			out.writeAttribute("class", styleSheet.getClassName(style));
+		} else {
+			out.writeAttribute("style", style);
+		}
+	}
+
+	private boolean isWhiteSpace(int event) {
+		return (event == CHARACTERS || event == SPACE) && reader.isWhiteSpace();
+	}
+
+	private String attribute(String name) {
+		return reader.getAttributeValue(null, name);
+	}
+
+	private boolean isUseStyles() {
+		return isOptionSet(RichText2Html.USE_INLINE_STYLES)
+				|| isOptionSet(RichText2Html.USE_CSS_CLASSES);
+	}
+
+	private boolean isOptionSet(int option) {
+		return (options & option) == option;
+	}
+
+	/**
+	 * The text of the current element as bytes, copied out of the reader
+	 * event by event. The stream ends at the element's end tag.
+	 */
+	private final class TextInputStream extends InputStream {
+
+		private final char[] chars = new char[4096];
+		private int pos;
+		private int length;
+		private int offset;
+		private boolean inText;
+		private boolean end;
+
+		public int read() throws IOException {
+			if (pos == length && !fill()) {
+				return -1;
+			}
+			return CharSequenceInputStream.toByte(chars[pos++]);
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (pos == length && !fill()) {
+				return -1;
+			}
+			len = Math.min(len, length - pos);
+			for (int i = 0; i < len; i++) {
+				b[off + i] = (byte) CharSequenceInputStream
+						.toByte(chars[pos++]);
+			}
+			return len;
+		}
+
+		private boolean fill() throws IOException {
+			try {
+				while (!end) {
+					if (inText) {
+						length = reader.getTextCharacters(offset, chars, 0,
+								chars.length);
+						if (length > 0) {
+							offset += length;
+							pos = 0;
+							return true;
+						}
+						inText = false;
+					}
+					int event = reader.next();
+					if (event == CHARACTERS || event == CDATA || event == SPACE) {
+						inText = true;
+						offset = 0;
+					} else if (event == START_ELEMENT) {
+						RichText2HtmlStreamer.this.skip();
+					} else if (event == END_ELEMENT) {
+						end = true;
+					}
+				}
+				pos = 0;
+				length = 0;
+				return false;
+			} catch (XMLStreamException e) {
+				throw new IOException(e);
+			}
+		}
+
+		private void skipToEnd() throws IOException {
+			while (fill()) {
+				pos = length;
+			}
+		}
+
+	}
+
+	private final class Block {
+
+		private String listId;
+		private final StringBuilder whitespace = new StringBuilder();
+
+		private void closeList() throws XMLStreamException {
+			if (listId != null) {
+				out.writeEndElement();
+				listId = null;
+				if (whitespace.length() > 0) {
+					out.writeCharacters(whitespace.toString());
+					whitespace.setLength(0);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Rows are held back until it is known whether they (or their rowspans)
+	 * reach the last row of the table, which decides the bottom borders.
+	 */
+	private final class Table {
+
+		private final TableLayout layout;
+		private final Deque<Row> pending = new ArrayDeque<Row>();
+
+		private Table(TableLayout layout) {
+			this.layout = layout;
+		}
+
+		private void flush(boolean end) throws XMLStreamException {
+			while (!pending.isEmpty()) {
+				Row row = pending.peekFirst();
+				if (!end && layout.rowCount - row.rowNo < row.rowsNeeded) {
+					break;
+				}
+				pending.removeFirst();
+				writeRow(layout, row);
+			}
+		}
+
+	}
+
+	private static final class Row {
+
+		private final int rowNo;
+		private final List<Cell> cells = new ArrayList<Cell>();
+		private int rowsNeeded = 1;
+
+		private Row(int rowNo) {
+			this.rowNo = rowNo;
+		}
+
+	}
+
+	private static final class Cell {
+
+		private final int cellNo;
+		private String rowspan;
+		private String colspan;
+		private int rowspanValue;
+		private String borderWidth;
+		private boolean lastCell;
+		private String html;
+
+		private Cell(int cellNo) {
+			this.cellNo = cellNo;
+		}
+
+	}
+
+	private static final class FragmentReader extends Reader {
+
+		private final Reader in;
+		private String pending = "<body>";
+		private int pos;
+		private boolean done;
+
+		private FragmentReader(Reader in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (pending != null) {
+				int n = Math.min(len, pending.length() - pos);
+				pending.getChars(pos, pos + n, cbuf, off);
+				pos += n;
+				if (pos == pending.length()) {
+					pending = null;
+				}
+				return n;
+			}
+			if (done) {
+				return -1;
+			}
+			int n = in.read(cbuf, off, len);
+			if (n < 0) {
+				done = true;
+				pending = "</body>";
+				pos = 0;
+				return read(cbuf, off, len);
+			}
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+
+	}
+
+	private static final class NonFlushingWriter extends FilterWriter {
+
+		private NonFlushingWriter(Writer out) {
+			super(out);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+	}
+
+}
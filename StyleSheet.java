@@ -0,0 +1,161 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects the distinct style declarations of one conversion as CSS classes.
+ * Class names are derived from a hash of the declaration, with a numbered
+ * suffix when two declarations hash alike, so a name is only unique within
+ * the stylesheet that assigned it. Stylesheets of parts of one document
+ * therefore take their names from a shared stylesheet.
+ */
+final class StyleSheet {
+
+	static final String CLASS_PREFIX = "rt";
+
+	private final Map<String, String> classes = new LinkedHashMap<String, String>();
+	private final Map<String, String> declarations;
+	/** The stylesheet assigning the names, or null if this one does. */
+	private final StyleSheet names;
+
+	StyleSheet() {
+		this.declarations = new HashMap<String, String>();
+		this.names = null;
+	}
+
+	/**
+	 * Creates a stylesheet holding the classes used by one part of a
+	 * document, named by the shared stylesheet, which may be used by
+	 * several threads at once.
+	 */
+	StyleSheet(StyleSheet names) {
+		this.declarations = null;
+		this.names = names;
+	}
+
+	/**
+	 * Returns a stylesheet assigning the same names as this one, which
+	 * keeps assigning names independently of it.
+	 */
+	synchronized StyleSheet copy() {
+		StyleSheet copy = new StyleSheet();
+		copy.classes.putAll(classes);
+		copy.declarations.putAll(declarations);
+		return copy;
+	}
+
+	String getClassName(String declaration) {
+		declaration = sanitize(declaration);
+		if (names == null) {
+			return assignClassName(declaration);
+		}
+		String name = classes.get(declaration);
+		if (name == null) {
+			name = names.getClassName(declaration);
+			classes.put(declaration, name);
+		}
+		return name;
+	}
+
+	/**
+	 * Drops the characters that would let a declaration built from DXL
+	 * values end its rule or the style element, or split it across lines.
+	 */
+	static String sanitize(String declaration) {
+		StringBuilder sanitized = null;
+		for (int i = 0; i < declaration.length(); i++) {
+			switch (declaration.charAt(i)) {
+			case '<':
+			case '>':
+			case '{':
+			case '}':
+			case '\\':
+			case '\n':
+			case '\r':
+			case '\f':
+				if (sanitized == null) {
+					sanitized = new StringBuilder(declaration.length());
+					sanitized.append(declaration, 0, i);
+				}
+				break;
+			default:
+				if (sanitized != null) {
+					sanitized.append(declaration.charAt(i));
+				}
+			}
+		}
+		return sanitized == null ? declaration : sanitized.toString();
+	}
+
+	private synchronized String assignClassName(String declaration) {
+		String name = classes.get(declaration);
+		if (name == null) {
+			String base = CLASS_PREFIX
+					+ Integer.toString(declaration.hashCode() & 0x7fffffff, 36);
+			name = base;
+			for (int i = 2; declarations.containsKey(name); i++) {
+				name = base + "-" + i;
+			}
+			classes.put(declaration, name);
+			declarations.put(name, declaration);
+		}
+		return name;
+	}
+
+	boolean isEmpty() {
+		return classes.isEmpty();
+	}
+
+	String toCss() {
+		StringBuilder css = new StringBuilder();
+		for (Map.Entry<String, String> entry : classes.entrySet()) {
+			css.append('.').append(entry.getValue()).append('{').append(
+					entry.getKey()).append("}\n");
+		}
+		return css.toString();
+	}
+
+	/**
+	 * Joins the CSS of parts of one document, keeping every rule once. The
+	 * parts must have been named by the same stylesheet.
+	 */
+	static String merge(String[] css) {
+		Set<String> rules = new LinkedHashSet<String>();
+		for (String part : css) {
+			for (String rule : part.split("\n")) {
+				if (rule.length() > 0) {
+					rules.add(rule);
+				}
+			}
+		}
+		StringBuilder merged = new StringBuilder();
+		for (String rule : rules) {
+			merged.append(rule).append('\n');
+		}
+		return merged.toString();
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Layout state of one DXL table: column widths, border settings and the
+ * cells covered by rowspans and colspans. Rows and columns are numbered from
+ * 1 like in the DXL, and rows are laid out in order. Only the covered cells
+ * of the current row are materialized; rowspans reaching further down are
+ * kept as column ranges, so a huge rowspan costs no more than a small one.
+ */
+final class TableLayout {
+
+	/** Largest colspan and rowspan HTML honours. */
+	static final int MAX_COLSPAN = 1000;
+	static final int MAX_ROWSPAN = 65534;
+
+	final String borderColor;
+	final String borderStyle;
+
+	int rowCount;
+
+	private String[] widths = new String[8];
+	private int columnCount;
+	/** First and end column, first and last covered row of each rowspan. */
+	private final List<int[]> rowspans = new ArrayList<int[]>();
+	private BitSet covered;
+	private int coveredRow;
+
+	TableLayout(String borderColor, String borderStyle) {
+		this.borderColor = borderColor == null ? "black" : borderColor;
+		this.borderStyle = borderStyle == null ? "solid" : borderStyle;
+	}
+
+	void addColumn(String width) {
+		if (columnCount == widths.length) {
+			widths = Arrays.copyOf(widths, columnCount * 2);
+		}
+		widths[columnCount++] = width == null ? "" : width;
+	}
+
+	int getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * Returns the width of the column, or null if the table declares fewer
+	 * columns.
+	 */
+	String getColumnWidth(int colNo) {
+		return colNo >= 1 && colNo <= columnCount ? widths[colNo - 1] : null;
+	}
+
+	/**
+	 * Returns the first column at or after colNo that no span covers.
+	 */
+	int nextFreeColumn(int rowNo, int colNo) {
+		return getCovered(rowNo).nextClearBit(colNo);
+	}
+
+	/**
+	 * Returns the colspan attribute value of a cell placed at colNo, or 1
+	 * if it is missing or nonsensical, limited to the declared columns from
+	 * colNo on.
+	 */
+	int getColspan(int colNo, String value) {
+		int colspan = Math.min(parseSpan(value), MAX_COLSPAN);
+		if (colNo <= columnCount) {
+			colspan = Math.min(colspan, columnCount - colNo + 1);
+		}
+		return colspan;
+	}
+
+	/**
+	 * Returns the rowspan attribute value, or 1 if it is missing or
+	 * nonsensical. Callers knowing the row count limit it further.
+	 */
+	int getRowspan(String value) {
+		return Math.min(parseSpan(value), MAX_ROWSPAN);
+	}
+
+	/**
+	 * Marks the cells covered by a cell placed at rowNo/colNo, except the
+	 * cell itself.
+	 */
+	void span(int rowNo, int colNo, int rowspan, int colspan) {
+		if (colspan < 1) {
+			colspan = 1;
+		}
+		if (colspan > 1) {
+			getCovered(rowNo).set(colNo + 1, colNo + colspan);
+		}
+		if (rowspan > 1) {
+			rowspans.add(new int[] { colNo, colNo + colspan, rowNo + 1,
+					rowNo + rowspan - 1 });
+		}
+	}
+
+	void release(int rowNo) {
+		if (coveredRow == rowNo) {
+			covered = null;
+		}
+	}
+
+	boolean isLastRow(int rowNo, int rowspan) {
+		return rowNo + rowspan > rowCount;
+	}
+
+	boolean isLastCell(int colNo, int colspan) {
+		return colNo + colspan > columnCount;
+	}
+
+	/**
+	 * Returns the covered cells of the row, computing them from the
+	 * rowspans above when the row is visited first.
+	 */
+	private BitSet getCovered(int rowNo) {
+		if (covered == null || coveredRow != rowNo) {
+			covered = new BitSet();
+			coveredRow = rowNo;
+			for (Iterator<int[]> i = rowspans.iterator(); i.hasNext();) {
+				int[] span = i.next();
+				if (span[3] < rowNo) {
+					i.remove();
+				} else if (span[2] <= rowNo) {
+					covered.set(span[0], span[1]);
+				}
+			}
+		}
+		return covered;
+	}
+
+	private static int parseSpan(String value) {
+		if (value == null) {
+			return 1;
+		}
+		try {
+			return Math.max(1, Integer.parseInt(value.trim()));
+		} catch (NumberFormatException e) {
+			return 1;
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sirius.utils.domino.RichText2Html;
+import sirius.utils.domino.RichText2HtmlConverter;
+
+/**
+ * Asynchronous conversions under high concurrency: every benchmark thread
+ * waits for its own conversions, like a request handler would. Compares the
+ * default executor, a virtual thread per conversion on JDK 21 and later,
+ * with a fixed pool of one platform thread per core. SampleTime reports
+ * the p99 latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode( { Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(256)
+public class AsyncBenchmark {
+
+	@Param( { "default", "fixed" })
+	public String executor;
+
+	@Param( { DxlCorpus.MEMO, DxlCorpus.TABLES })
+	public String scenario;
+
+	@Param( { "100" })
+	public int size;
+
+	private String richText;
+	private List<String> batch;
+	private ExecutorService pool;
+	private RichText2HtmlConverter converter;
+
+	@Setup
+	public void setUp() {
+		richText = DxlCorpus.generate(scenario, size, 3);
+		batch = Collections.nCopies(16, richText);
+		converter = new RichText2HtmlConverter(
+				RichText2Html.USE_INLINE_STYLES);
+		if (executor.equals("fixed")) {
+			pool = Executors.newFixedThreadPool(Runtime.getRuntime()
+					.availableProcessors());
+			converter = converter.withExecutor(pool);
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (pool != null) {
+			pool.shutdownNow();
+		}
+	}
+
+	@Benchmark
+	public String parseAsync() {
+		return converter.parseAsync(richText, "").join();
+	}
+
+	@Benchmark
+	public List<String> parseAllAsync() {
+		return converter.parseAllAsync(batch).join();
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sirius.utils.domino.ElementHandler;
+import sirius.utils.domino.RichText2Html;
+import sirius.utils.domino.RichText2HtmlConverter;
+
+/**
+ * Allocation against nesting depth when the transform moves nodes, as it
+ * does now, and when every container element is deep-cloned before it is
+ * converted, as the transform used to do. Run with -prof gc and divide
+ * gc.alloc.rate.norm by the length of DxlCorpus.generate(scenario, size,
+ * depth), which only depends on the parameters: with moves the bytes per
+ * input byte stay flat as the depth grows, with clones they grow with it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CloneBenchmark {
+
+	private static final String[] CONTAINERS = { "run", "section", "popup",
+			"table", "urllink" };
+
+	@Param( { DxlCorpus.TABLES, DxlCorpus.SECTIONS })
+	public String scenario;
+
+	@Param( { "1", "3", "8", "16" })
+	public int depth;
+
+	@Param( { "200" })
+	public int size;
+
+	private String richText;
+	private RichText2HtmlConverter moving;
+	private RichText2HtmlConverter cloning;
+
+	@Setup
+	public void setUp() {
+		richText = DxlCorpus.generate(scenario, size, depth);
+		moving = new RichText2HtmlConverter(RichText2Html.USE_INLINE_STYLES);
+		cloning = moving;
+		for (String name : CONTAINERS) {
+			final ElementHandler handler = moving.getHandler(name);
+			cloning = cloning.withHandler(name, (element, context) -> handler
+					.convert(element.cloneNode(true), context));
+		}
+	}
+
+	@Benchmark
+	public String move() {
+		return moving.parse(richText, "");
+	}
+
+	@Benchmark
+	public String deepClone() {
+		return cloning.parse(richText, "");
+	}
+
+}
@@ -0,0 +1,213 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generates rich text DXL fragments, as accepted by
+ * RichText2Html.parse(String, String), for the benchmarks. The output only
+ * depends on the arguments, so runs are comparable.
+ */
+public final class DxlCorpus {
+
+	public static final String PARAGRAPHS = "paragraphs";
+	public static final String LISTS = "lists";
+	public static final String TABLES = "tables";
+	public static final String SECTIONS = "sections";
+	public static final String MEMO = "memo";
+
+	private static final String[] FONT_STYLES = { "bold", "italic",
+			"bold italic", "underline", "strikethrough", "superscript",
+			"subscript", "bold underline" };
+	private static final String[] ALIGNS = { "left", "center", "right",
+			"full" };
+	private static final String[] LIST_STYLES = { "bullet", "number",
+			"square", "alphalower", "romanupper", "circle" };
+	private static final String[] WORDS = { "lorem", "ipsum", "dolor", "sit",
+			"amet", "consectetur", "adipiscing", "elit", "sed", "do",
+			"eiusmod", "tempor", "&amp;", "&lt;tag&gt;" };
+
+	private final Random random;
+	private final StringBuilder dxl = new StringBuilder();
+
+	private DxlCorpus(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * @param size number of paragraphs, list items, table rows or sections
+	 * @param depth list levels, table nesting or section nesting
+	 */
+	public static String generate(String scenario, int size, int depth) {
+		DxlCorpus corpus = new DxlCorpus(size * 31L + depth);
+		if (scenario.equals(PARAGRAPHS)) {
+			corpus.paragraphs(size);
+		} else if (scenario.equals(LISTS)) {
+			corpus.lists(size, depth);
+		} else if (scenario.equals(TABLES)) {
+			corpus.tables(size, depth);
+		} else if (scenario.equals(SECTIONS)) {
+			corpus.sections(size, depth);
+		} else if (scenario.equals(MEMO)) {
+			corpus.memo();
+		} else {
+			throw new IllegalArgumentException("Unknown scenario " + scenario);
+		}
+		return corpus.dxl.toString();
+	}
+
+	private void paragraphs(int size) {
+		for (int i = 0; i < ALIGNS.length; i++) {
+			dxl.append("<pardef id='").append(i + 1).append("' align='")
+					.append(ALIGNS[i]).append("' leftmargin='")
+					.append(1 + i * 0.25).append("in' spaceafter='")
+					.append(i % 2 == 0 ? "1.5" : "2").append("'/>\n");
+		}
+		for (int i = 0; i < size; i++) {
+			dxl.append("<par def='").append(1 + i % ALIGNS.length).append("'>");
+			int runs = 1 + random.nextInt(4);
+			for (int j = 0; j < runs; j++) {
+				run();
+			}
+			dxl.append(words(3)).append("</par>\n");
+		}
+	}
+
+	private void lists(int size, int depth) {
+		int levels = Math.max(1, depth);
+		for (int i = 0; i < levels; i++) {
+			dxl.append("<pardef id='").append(i + 1).append("' list='")
+					.append(LIST_STYLES[i % LIST_STYLES.length])
+					.append("' leftmargin='").append(1.25 + i * 0.25)
+					.append("in'/>\n");
+		}
+		dxl.append("<pardef id='").append(levels + 1).append("'/>\n");
+		int level = 0;
+		for (int i = 0; i < size; i++) {
+			if (random.nextInt(3) == 0) {
+				level = random.nextInt(levels);
+			}
+			dxl.append("<par def='").append(level + 1).append("'>");
+			run();
+			dxl.append("</par>\n");
+			if (i % 50 == 49) {
+				dxl.append("<par def='").append(levels + 1).append("'>")
+						.append(words(4)).append("</par>\n");
+			}
+		}
+	}
+
+	private void tables(int size, int depth) {
+		dxl.append("<pardef id='1'/>\n");
+		table(size, Math.max(1, depth));
+	}
+
+	private void table(int rows, int depth) {
+		int columns = 8;
+		dxl.append("<table widthtype='fitmargins' leftmargin='1in' cellbordercolor='gray'>");
+		for (int i = 0; i < columns; i++) {
+			dxl.append("<tablecolumn width='").append(0.5 + i * 0.125)
+					.append("in'/>");
+		}
+		boolean[][] covered = new boolean[rows + 1][columns + 1];
+		for (int row = 0; row < rows; row++) {
+			dxl.append("<tablerow>");
+			for (int col = 0; col < columns; col++) {
+				if (covered[row][col]) {
+					continue;
+				}
+				int rowspan = row + 1 < rows && random.nextInt(10) == 0 ? 2 : 1;
+				int colspan = col + 1 < columns && !covered[row][col + 1]
+						&& random.nextInt(8) == 0 ? 2 : 1;
+				for (int i = 0; i < rowspan; i++) {
+					for (int j = 0; j < colspan; j++) {
+						covered[row + i][col + j] = true;
+					}
+				}
+				dxl.append("<tablecell");
+				if (rowspan > 1) {
+					dxl.append(" rowspan='2'");
+				}
+				if (colspan > 1) {
+					dxl.append(" columnspan='2'");
+				}
+				if (random.nextInt(4) == 0) {
+					dxl.append(" borderwidth='2px 1px 1px 2px'");
+				}
+				dxl.append('>');
+				if (depth > 1 && row == 0 && col == 0) {
+					table(Math.max(2, rows / 10), depth - 1);
+				} else {
+					dxl.append("<par def='1'>");
+					run();
+					dxl.append("</par>");
+				}
+				dxl.append("</tablecell>");
+			}
+			dxl.append("</tablerow>\n");
+		}
+		dxl.append("</table>\n");
+	}
+
+	private void sections(int size, int depth) {
+		dxl.append("<pardef id='1'/>\n");
+		for (int i = 0; i < size; i++) {
+			section(Math.max(1, depth));
+		}
+	}
+
+	private void section(int depth) {
+		// the section title must follow a text node, as in exported DXL
+		dxl.append("<section>\n<sectiontitle><font style='bold'/><run>")
+				.append(words(3)).append("</run></sectiontitle>\n");
+		dxl.append("<par def='1'>").append(words(5)).append(
+				"<popup show='onclick' hotspotstyle='highlight'><popuptext>")
+				.append(words(6)).append("</popuptext>").append(words(2))
+				.append("</popup></par>\n");
+		if (depth > 1) {
+			section(depth - 1);
+		}
+		dxl.append("</section>\n");
+	}
+
+	private void memo() {
+		dxl.append("<pardef id='1'/>\n<par def='1'>").append(words(8))
+				.append("</par>\n<par def='1'/>\n<par def='1'>");
+		run();
+		dxl.append("</par>\n");
+	}
+
+	private void run() {
+		dxl.append("<run><font style='")
+				.append(FONT_STYLES[random.nextInt(FONT_STYLES.length)])
+				.append("'/>").append(words(1 + random.nextInt(6))).append(
+						"</run>");
+	}
+
+	private String words(int count) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+		}
+		return text.toString();
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import sirius.utils.domino.RichText2Html;
+import sirius.utils.domino.RichText2HtmlConverter;
+
+/**
+ * Conversion benchmarks over the generated corpus. None of them needs a
+ * Domino runtime. Run with -prof gc to get the allocation rate per
+ * scenario.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode( { Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+	@Param( { DxlCorpus.PARAGRAPHS, DxlCorpus.LISTS, DxlCorpus.TABLES,
+			DxlCorpus.SECTIONS, DxlCorpus.MEMO })
+	public String scenario;
+
+	@Param( { "100", "2000" })
+	public int size;
+
+	@Param( { "1", "3", "8", "16" })
+	public int depth;
+
+	private String richText;
+	private RichText2HtmlConverter inlineStyles;
+	private RichText2HtmlConverter cssClasses;
+	private RichText2HtmlConverter parallel;
+
+	@Setup
+	public void setUp() {
+		richText = DxlCorpus.generate(scenario, size, depth);
+		inlineStyles = new RichText2HtmlConverter(
+				RichText2Html.USE_INLINE_STYLES);
+		cssClasses = new RichText2HtmlConverter(RichText2Html.USE_CSS_CLASSES);
+		parallel = inlineStyles.withParallelTransform(2, null);
+	}
+
+	@Benchmark
+	public String parse() {
+		return RichText2Html.parse(richText, "");
+	}
+
+	@Benchmark
+	public String parseInlineStyles() {
+		return inlineStyles.parse(richText, "");
+	}
+
+	@Benchmark
+	public String parseCssClasses() {
+		return cssClasses.parse(richText, "");
+	}
+
+	@Benchmark
+	public String parseParallel() {
+		return parallel.parse(richText, "");
+	}
+
+	@Benchmark
+	public String stream() throws IOException {
+		StringWriter html = new StringWriter(richText.length());
+		inlineStyles.parse(new StringReader(richText), html);
+		return html.toString();
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import lotus.domino.Database;
+import lotus.domino.Document;
+import lotus.domino.DxlExporter;
+import lotus.domino.Item;
+import lotus.domino.RichTextItem;
+import lotus.domino.Session;
+
+/**
+ * Stand-ins for the Domino objects an Item conversion touches, serving a
+ * recorded note DXL, so the Item code paths can be measured without a
+ * Domino runtime.
+ */
+final class RecordedNote implements InvocationHandler {
+
+	private final String dxl;
+	private final String itemName;
+	private final Object item;
+	private final Object doc;
+	private final Object database;
+	private final Object session;
+	private final Object exporter;
+
+	private RecordedNote(String dxl, String itemName) {
+		this.dxl = dxl;
+		this.itemName = itemName;
+		this.item = create(RichTextItem.class);
+		this.doc = create(Document.class);
+		this.database = create(Database.class);
+		this.session = create(Session.class);
+		this.exporter = create(DxlExporter.class);
+	}
+
+	/**
+	 * Wraps rich text DXL into a note with a Subject and a Body item, as
+	 * DxlExporter writes it.
+	 */
+	static String toNote(String richText) {
+		return "<?xml version='1.0' encoding='utf-8'?>\n"
+				+ "<!DOCTYPE document SYSTEM 'xmlschemas/domino_9_0_1.dtd'>\n"
+				+ "<document xmlns='http://www.lotus.com/dxl' version='9.0' form='Memo'>\n"
+				+ "<noteinfo noteid='8fa' unid='0123456789ABCDEF0123456789ABCDEF'/>\n"
+				+ "<item name='Subject'><text>Recorded note</text></item>\n"
+				+ "<item name='Body'><richtext>" + richText
+				+ "</richtext></item>\n</document>\n";
+	}
+
+	static Item item(String dxl, String itemName) {
+		return (Item) new RecordedNote(dxl, itemName).item;
+	}
+
+	private Object create(Class<?> type) {
+		return Proxy.newProxyInstance(RecordedNote.class.getClassLoader(),
+				new Class<?>[] { type }, this);
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args) {
+		String name = method.getName();
+		if (proxy == item) {
+			if (name.equals("getType")) {
+				return Item.RICHTEXT;
+			} else if (name.equals("getName")) {
+				return itemName;
+			} else if (name.equals("getParent")) {
+				return doc;
+			} else if (name.equals("getUnformattedText")
+					|| name.equals("getText")) {
+				return "";
+			}
+		} else if (proxy == doc) {
+			if (name.equals("getParentDatabase")) {
+				return database;
+			} else if (name.equals("getFirstItem")) {
+				return item;
+			}
+		} else if (proxy == database && name.equals("getParent")) {
+			return session;
+		} else if (proxy == session && name.equals("createDxlExporter")) {
+			return exporter;
+		} else if (proxy == exporter && name.equals("exportDxl")) {
+			return dxl;
+		}
+		if (name.equals("hashCode")) {
+			return System.identityHashCode(proxy);
+		} else if (name.equals("equals")) {
+			return proxy == args[0];
+		}
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return Boolean.FALSE;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+
+}
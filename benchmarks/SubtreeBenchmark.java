@@ -0,0 +1,119 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino.benchmarks;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import lotus.domino.Item;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+import sirius.utils.domino.RichText2Html;
+import sirius.utils.domino.RichText2HtmlConverter;
+
+/**
+ * Converts the Body item of a recorded note. inPlace is the current Item
+ * path, which converts the exported richtext element where it was parsed.
+ * roundTrip repeats what the Item constructor used to do: parse the note,
+ * serialize the item again, cut out the rich text and parse that a second
+ * time. Run with -prof gc to compare the allocation as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubtreeBenchmark {
+
+	@Param( { DxlCorpus.PARAGRAPHS, DxlCorpus.TABLES, DxlCorpus.MEMO })
+	public String scenario;
+
+	@Param( { "100", "2000" })
+	public int size;
+
+	private String note;
+	private Item item;
+	private RichText2HtmlConverter converter;
+	private DocumentBuilder builder;
+	private Transformer transformer;
+
+	@Setup
+	public void setUp() throws Exception {
+		note = RecordedNote.toNote(DxlCorpus.generate(scenario, size, 3));
+		item = RecordedNote.item(note, "Body");
+		converter = new RichText2HtmlConverter(RichText2Html.USE_INLINE_STYLES);
+		builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		transformer = TransformerFactory.newInstance().newTransformer();
+	}
+
+	@Benchmark
+	public String inPlace() {
+		return converter.parse(item);
+	}
+
+	@Benchmark
+	public String roundTrip() throws Exception {
+		String dxl = note.substring(note.indexOf("<item"), note
+				.lastIndexOf("</document>"));
+		org.w3c.dom.Document doc = builder.parse(new InputSource(
+				new StringReader("<body>" + dxl + "</body>")));
+		NodeList items = doc.getDocumentElement().getChildNodes();
+		for (int i = 0; i < items.getLength(); i++) {
+			Node node = items.item(i);
+			if (node.getNodeName().equals("item")
+					&& node.getAttributes().getNamedItem("name")
+							.getNodeValue().equals("Body")) {
+				StringWriter xml = new StringWriter();
+				transformer.transform(new DOMSource(node), new StreamResult(
+						xml));
+				String richText = xml.toString();
+				richText = richText.substring(richText.indexOf("<richtext>")
+						+ "<richtext>".length(), richText
+						.lastIndexOf("</richtext>"));
+				return converter.parse(richText, "");
+			}
+		}
+		return "";
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package sirius.utils.domino;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import sirius.utils.domino.ConversionStats.Phase;
+
+/**
+ * Emits a JDK Flight Recorder event per conversion. Nothing is allocated
+ * beyond the event itself, and nothing at all while the event is disabled in
+ * the recording settings. Needs Java 11, unlike the rest of the library.
+ * <p>
+ * The listener is only called once the conversion is over, so the event is
+ * not timed itself: it is committed at the end of the conversion and
+ * carries the measured duration in its conversionTime field. Its threshold
+ * in the recording settings has to stay at 0.
+ */
+public final class JfrConversionListener implements ConversionListener {
+
+	public void converted(ConversionStats stats) {
+		commit(stats, null);
+	}
+
+	public void fellBack(ConversionStats stats, Exception cause) {
+		commit(stats, cause);
+	}
+
+	private static void commit(ConversionStats stats, Exception cause) {
+		ConversionEvent event = new ConversionEvent();
+		if (!event.isEnabled()) {
+			return;
+		}
+		event.itemName = stats.getItemName();
+		event.conversionTime = stats.getTotalNanos();
+		event.exportTime = stats.getNanos(Phase.EXPORT);
+		event.loadTime = stats.getNanos(Phase.LOAD);
+		event.parDefsTime = stats.getNanos(Phase.PARDEFS);
+		event.transformTime = stats.getNanos(Phase.TRANSFORM);
+		event.serializeTime = stats.getNanos(Phase.SERIALIZE);
+		event.inputLength = stats.getInputLength();
+		event.outputLength = stats.getOutputLength();
+		event.status = stats.getStatus().name();
+		if (stats.getLimit() != null) {
+			event.limit = stats.getLimit().name();
+		}
+		if (cause != null) {
+			event.fallback = true;
+			event.cause = cause.toString();
+		}
+		if (event.shouldCommit()) {
+			event.commit();
+		}
+	}
+
+	@Name("sirius.utils.domino.Conversion")
+	@Label("Rich Text Conversion")
+	@Category("RichText2Html")
+	@StackTrace(false)
+	static final class ConversionEvent extends Event {
+
+		@Label("Item")
+		String itemName;
+
+		@Label("Conversion Time")
+		@Description("Sum of the phase times; the event itself is not timed")
+		@Timespan(Timespan.NANOSECONDS)
+		long conversionTime;
+
+		@Label("Export Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long exportTime;
+
+		@Label("Load Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long loadTime;
+
+		@Label("Pardefs Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long parDefsTime;
+
+		@Label("Transform Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long transformTime;
+
+		@Label("Serialize Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long serializeTime;
+
+		@Label("Input Length")
+		@Description("Characters of DXL read")
+		long inputLength;
+
+		@Label("Output Length")
+		@Description("Characters of HTML written")
+		long outputLength;
+
+		@Label("Status")
+		String status;
+
+		@Label("Limit")
+		@Description("The limit that truncated or aborted the conversion")
+		String limit;
+
+		@Label("Fallback")
+		@Description("The unformatted text was returned")
+		boolean fallback;
+
+		@Label("Cause")
+		String cause;
+
+	}
+
+}
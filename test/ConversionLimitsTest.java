@@ -0,0 +1,99 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package sirius.utils.domino;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import sirius.utils.domino.ConversionLimits.Limit;
+import sirius.utils.domino.RichText2HtmlResult.Status;
+
+public class ConversionLimitsTest {
+
+	@Test
+	public void spansCountAgainstTheCellBudget() {
+		String dxl = "<pardef id='1'/><table>"
+				+ "<tablecolumn width='1in'/><tablecolumn width='1in'/>"
+				+ row("<tablecell rowspan='20000000' columnspan='2000000000'>"
+						+ "<par def='1'>big</par></tablecell>") + row("")
+				+ row("") + "</table><pardef id='2'/><par def='2'>after</par>";
+		// the cell covers the whole table of 3 x 2 cells
+		RichText2HtmlResult result = convert(ConversionLimits.NONE
+				.withTimeout(1, TimeUnit.SECONDS).withMaxTableCells(5), dxl);
+		assertEquals(Status.TRUNCATED, result.getStatus());
+		assertEquals(Limit.TABLE_CELLS, result.getLimit());
+		assertFalse(result.getHtml().contains("big"));
+		assertTrue(result.getHtml().contains("after"));
+
+		result = convert(ConversionLimits.NONE.withMaxTableCells(6), dxl);
+		assertEquals(Status.COMPLETE, result.getStatus());
+		assertTrue(result.getHtml().contains("big"));
+	}
+
+	@Test
+	public void inputLengthAbortsTheConversion() {
+		RichText2HtmlResult result = new RichText2HtmlConverter().withLimits(
+				ConversionLimits.NONE.withMaxInputLength(10)).convert(
+				"<pardef id='1'/><par def='1'>too long</par>", "plain");
+		assertEquals(Status.ABORTED, result.getStatus());
+		assertEquals(Limit.INPUT_LENGTH, result.getLimit());
+		assertEquals("plain", result.getHtml());
+	}
+
+	@Test
+	public void malformedDxlFailsAndIsNotCached() {
+		HtmlCache cache = new HtmlCache(1 << 20);
+		RichText2HtmlConverter converter = new RichText2HtmlConverter()
+				.withCache(cache);
+		RichText2HtmlResult result = converter.convert(
+				"<par def='1'>unclosed", "plain");
+		assertEquals(Status.FAILED, result.getStatus());
+		assertNull(result.getLimit());
+		assertEquals("plain", result.getHtml());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void failedExportsFail() {
+		FakeNote note = new FakeNote().with("Body", "<par def='1'>unclosed");
+		RichText2HtmlResult result = new RichText2HtmlConverter().convert(note
+				.getItem("Body"));
+		assertEquals(Status.FAILED, result.getStatus());
+		assertEquals("plain Body", result.getHtml());
+	}
+
+	private static RichText2HtmlResult convert(ConversionLimits limits,
+			String dxl) {
+		return new RichText2HtmlConverter().withLimits(limits).convert(dxl,
+				"");
+	}
+
+	private static String row(String cells) {
+		return "<tablerow>" + cells + "</tablerow>";
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package sirius.utils.domino;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import sirius.utils.domino.ConversionLimits.Limit;
+import sirius.utils.domino.ConversionStats.Phase;
+import sirius.utils.domino.RichText2HtmlResult.Status;
+
+public class ConversionListenerTest {
+
+	private static final String MEMO = RichText2HtmlConverterTest.MEMO;
+	private static final String LIST = RichText2HtmlConverterTest.LIST;
+
+	private final Recorder recorder = new Recorder();
+	private final RichText2HtmlConverter converter = new RichText2HtmlConverter()
+			.withListener(recorder);
+
+	@Test
+	public void convertedRichTextIsMeasured() {
+		String html = converter.parse(MEMO, "");
+		assertEquals(1, recorder.stats.size());
+		ConversionStats stats = recorder.stats.get(0);
+		assertSame(null, recorder.causes.get(0));
+		assertSame(null, stats.getItemName());
+		assertEquals(Status.COMPLETE, stats.getStatus());
+		assertSame(null, stats.getLimit());
+		assertEquals(MEMO.length(), stats.getInputLength());
+		assertEquals(html.length(), stats.getOutputLength());
+		assertEquals(1, stats.getElementCount("run"));
+		assertTrue(stats.getNanos(Phase.TRANSFORM) > 0);
+		assertEquals(stats.getNanos(Phase.EXPORT) + stats.getNanos(Phase.LOAD)
+				+ stats.getNanos(Phase.PARDEFS)
+				+ stats.getNanos(Phase.TRANSFORM)
+				+ stats.getNanos(Phase.SERIALIZE), stats.getTotalNanos());
+	}
+
+	@Test
+	public void everyItemIsReportedByName() {
+		FakeNote note = new FakeNote().with("Body", MEMO).with("Notes", LIST);
+		converter.parseAll(note.getDocument());
+		assertEquals(Arrays.asList("Body", "Notes"), Arrays.asList(
+				recorder.stats.get(0).getItemName(), recorder.stats.get(1)
+						.getItemName()));
+		// the export is reported with the first item only
+		assertTrue(recorder.stats.get(0).getNanos(Phase.EXPORT) > 0);
+		assertEquals(0, recorder.stats.get(1).getNanos(Phase.EXPORT));
+	}
+
+	@Test
+	public void truncatedConversionsReportTheLimit() {
+		converter.withLimits(ConversionLimits.NONE.withMaxOutputLength(8))
+				.convert(LIST, "");
+		ConversionStats stats = recorder.stats.get(0);
+		assertSame(null, recorder.causes.get(0));
+		assertEquals(Status.TRUNCATED, stats.getStatus());
+		assertEquals(Limit.OUTPUT_LENGTH, stats.getLimit());
+	}
+
+	@Test
+	public void fallbacksReportTheirCause() {
+		assertEquals("plain", converter.parse("<par", "plain"));
+		assertEquals(Status.FAILED, recorder.stats.get(0).getStatus());
+		assertTrue(recorder.causes.get(0) != null);
+
+		converter.withLimits(ConversionLimits.NONE.withMaxInputLength(1))
+				.parse(MEMO, "plain");
+		assertEquals(Status.ABORTED, recorder.stats.get(1).getStatus());
+		assertEquals(Limit.INPUT_LENGTH, recorder.stats.get(1).getLimit());
+		assertTrue(recorder.causes.get(1) instanceof LimitExceededException);
+	}
+
+	private static final class Recorder implements ConversionListener {
+
+		private final List<ConversionStats> stats = new ArrayList<ConversionStats>();
+		private final List<Exception> causes = new ArrayList<Exception>();
+
+		public void converted(ConversionStats stats) {
+			this.stats.add(stats);
+			causes.add(null);
+		}
+
+		public void fellBack(ConversionStats stats, Exception cause) {
+			this.stats.add(stats);
+			causes.add(cause);
+		}
+
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package sirius.utils.domino;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import sirius.utils.domino.ConversionLimits.Limit;
+import sirius.utils.domino.RichText2HtmlResult.Status;
+
+public class ConversionTaskTest {
+
+	private static final String DXL = "<pardef id='1'/><par def='1'><run>"
+			+ "<font style='bold'/>stuck</run></par>";
+
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final AtomicBoolean interrupted = new AtomicBoolean();
+	private final ExecutorService executor = Executors
+			.newSingleThreadExecutor();
+
+	@After
+	public void release() {
+		release.countDown();
+		executor.shutdown();
+	}
+
+	@Test(timeout = 10000)
+	public void busyConversionsExpire() throws Exception {
+		RichText2HtmlResult result = stuck().convertAsync(DXL, "plain").get(
+				5, TimeUnit.SECONDS);
+		assertEquals(Status.ABORTED, result.getStatus());
+		assertEquals(Limit.DEADLINE, result.getLimit());
+		assertEquals("plain", result.getHtml());
+		release.countDown();
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+		assertTrue(interrupted.get());
+	}
+
+	@Test(timeout = 10000)
+	public void queuedConversionsExpire() throws Exception {
+		RichText2HtmlConverter converter = stuck();
+		converter.convertAsync(DXL, "");
+		try {
+			// waits behind the stuck conversion on the single thread
+			converter.parseAsync("<pardef id='1'/><par def='1'>x</par>", "")
+					.get(5, TimeUnit.SECONDS);
+			fail("the queued conversion did not expire");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void conversionsDoneInTimeDoNotExpire() throws Exception {
+		RichText2HtmlConverter converter = new RichText2HtmlConverter()
+				.withLimits(ConversionLimits.NONE.withTimeout(200,
+						TimeUnit.MILLISECONDS));
+		String html = converter.parseAsync(DXL, "").get();
+		Thread.sleep(400);
+		assertEquals(converter.parse(DXL, ""), html);
+	}
+
+	@Test
+	public void theDefaultExecutorIsNotTheCommonPool() {
+		assertNotSame(ForkJoinPool.commonPool(), new RichText2HtmlConverter()
+				.getExecutor());
+	}
+
+	/**
+	 * Returns a converter with a timeout of 200 ms on a single thread, whose
+	 * run handler blocks until the test ends, ignoring interrupts like a
+	 * DOM parse does.
+	 */
+	private RichText2HtmlConverter stuck() {
+		RichText2HtmlConverter converter = new RichText2HtmlConverter()
+				.withExecutor(executor).withLimits(
+						ConversionLimits.NONE.withTimeout(200,
+								TimeUnit.MILLISECONDS));
+		final ElementHandler run = converter.getHandler("run");
+		return converter.withHandler("run", new ElementHandler() {
+			public Node convert(Node element, RichText2Html context)
+					throws Exception {
+				while (true) {
+					try {
+						release.await();
+						break;
+					} catch (InterruptedException e) {
+						interrupted.set(true);
+					}
+				}
+				return run.convert(element, context);
+			}
+		});
+	}
+
+}
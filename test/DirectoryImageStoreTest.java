@@ -0,0 +1,130 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package sirius.utils.domino;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirectoryImageStoreTest {
+
+	private static final byte[] GIF = "GIF89a not really a picture"
+			.getBytes();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void identicalImagesAreStoredOnce() throws Exception {
+		DirectoryImageStore store = new DirectoryImageStore(folder.getRoot(),
+				"/img/");
+		String src = store.store("gif", new ByteArrayInputStream(GIF));
+		assertTrue(src, src.startsWith("/img/") && src.endsWith(".gif"));
+		assertEquals(src, store.store("gif", new ByteArrayInputStream(GIF)));
+		assertTrue(store.store("jpeg", new ByteArrayInputStream(new byte[1]))
+				.endsWith(".jpg"));
+		assertEquals(2, store.getStored());
+		assertEquals(1, store.getDuplicates());
+		assertArrayEquals(GIF, Files.readAllBytes(new File(folder.getRoot(),
+				src.substring(5)).toPath()));
+		assertEquals(2, folder.getRoot().list().length);
+	}
+
+	@Test
+	public void concurrentStoresOfOneImageAgree() throws Exception {
+		final DirectoryImageStore store = new DirectoryImageStore(folder
+				.getRoot(), "");
+		int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<String>> names = new ArrayList<Future<String>>();
+			for (int i = 0; i < threads; i++) {
+				names.add(pool.submit(new Callable<String>() {
+					public String call() throws Exception {
+						start.await();
+						return store.store("png", new ByteArrayInputStream(GIF));
+					}
+				}));
+			}
+			start.countDown();
+			HashSet<String> distinct = new HashSet<String>();
+			for (Future<String> name : names) {
+				distinct.add(name.get());
+			}
+			assertEquals(1, distinct.size());
+			assertEquals(threads, store.getStored() + store.getDuplicates());
+			// no temporary files are left behind
+			assertEquals(Arrays.asList(distinct.iterator().next()), Arrays
+					.asList(folder.getRoot().list()));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void picturesBecomeImagesInBothEngines() throws Exception {
+		DirectoryImageStore store = new DirectoryImageStore(folder.getRoot(),
+				"/img/");
+		String base64 = Base64.getMimeEncoder().encodeToString(GIF);
+		String picture = "<picture width='10px' height='5px' "
+				+ "alttext='a &quot;b&quot;'><gif>" + base64
+				+ "</gif></picture>";
+		String dxl = "<pardef id='1'/><par def='1'>" + picture + picture
+				+ "</par>";
+		RichText2HtmlConverter converter = new RichText2HtmlConverter()
+				.withImageStore(store);
+		String src = store.store("gif", new ByteArrayInputStream(GIF));
+		String img = "<img alt=\"a &quot;b&quot;\" height=\"5\" src=\"" + src
+				+ "\" width=\"10\">";
+		assertEquals("<p>" + img + img + "</p>", converter.parse(dxl, ""));
+
+		StringWriter html = new StringWriter();
+		converter.parse(new StringReader(dxl), html);
+		assertEquals("<p>" + img + img + "</p>", html.toString());
+		assertEquals(1, store.getStored());
+		assertEquals(4, store.getDuplicates());
+
+		// without a store pictures are dropped
+		assertEquals("<p></p>", new RichText2HtmlConverter().parse(dxl, ""));
+	}
+
+}
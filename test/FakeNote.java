@@ -0,0 +1,205 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package sirius.utils.domino;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import lotus.domino.Database;
+import lotus.domino.DateTime;
+import lotus.domino.Document;
+import lotus.domino.DocumentCollection;
+import lotus.domino.DxlExporter;
+import lotus.domino.Item;
+import lotus.domino.RichTextItem;
+import lotus.domino.Session;
+
+/**
+ * Stand-ins for the Domino objects a conversion touches, serving a note with
+ * the given rich text items, so the Item and Document code paths can be
+ * tested without a Domino runtime.
+ */
+final class FakeNote implements InvocationHandler {
+
+	private static final String UNID = "0123456789ABCDEF0123456789ABCDEF";
+
+	private final String unid;
+	private final Map<String, String> richTexts = new LinkedHashMap<String, String>();
+	private final Map<Object, String> items = new LinkedHashMap<Object, String>();
+	private final Object doc = create(Document.class);
+	private final Object database = create(Database.class);
+	private final Object session = create(Session.class);
+	private final Object exporter = create(DxlExporter.class);
+	private final Object modified = create(DateTime.class);
+	private long lastModified = 1300000000000L;
+	private int exports;
+
+	FakeNote() {
+		this(UNID);
+	}
+
+	FakeNote(String unid) {
+		this.unid = unid;
+	}
+
+	/**
+	 * Returns a collection of the notes' documents, in the given order.
+	 */
+	static DocumentCollection collection(final FakeNote... notes) {
+		return (DocumentCollection) Proxy.newProxyInstance(FakeNote.class
+				.getClassLoader(), new Class<?>[] { DocumentCollection.class },
+				new InvocationHandler() {
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						String name = method.getName();
+						if (name.equals("getFirstDocument")) {
+							return notes.length == 0 ? null : notes[0].doc;
+						} else if (name.equals("getNextDocument")) {
+							for (int i = 0; i < notes.length - 1; i++) {
+								if (notes[i].doc == args[0]) {
+									return notes[i + 1].doc;
+								}
+							}
+							return null;
+						} else if (name.equals("getCount")) {
+							return notes.length;
+						}
+						return null;
+					}
+				});
+	}
+
+	/**
+	 * Adds a rich text item, given as the content of its richtext element.
+	 */
+	FakeNote with(String itemName, String richText) {
+		richTexts.put(itemName, richText);
+		items.put(create(RichTextItem.class), itemName);
+		return this;
+	}
+
+	Document getDocument() {
+		return (Document) doc;
+	}
+
+	Item getItem(String itemName) {
+		for (Map.Entry<Object, String> entry : items.entrySet()) {
+			if (entry.getValue().equals(itemName)) {
+				return (Item) entry.getKey();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the DXL of the note, as DxlExporter writes it.
+	 */
+	String getDxl() {
+		StringBuilder dxl = new StringBuilder(
+				"<?xml version='1.0' encoding='utf-8'?>\n"
+						+ "<!DOCTYPE document SYSTEM 'xmlschemas/domino_9_0_1.dtd'>\n"
+						+ "<document xmlns='http://www.lotus.com/dxl' version='9.0' form='Memo'>\n"
+						+ "<noteinfo noteid='8fa' unid='" + unid + "'/>\n"
+						+ "<item name='Subject'><text>Fake note</text></item>\n");
+		for (Map.Entry<String, String> entry : richTexts.entrySet()) {
+			dxl.append("<item name='").append(entry.getKey())
+					.append("'><richtext>").append(entry.getValue())
+					.append("</richtext></item>\n");
+		}
+		return dxl.append("</document>\n").toString();
+	}
+
+	int getExports() {
+		return exports;
+	}
+
+	/**
+	 * Marks the note as changed, which invalidates its cached conversions.
+	 */
+	void touch() {
+		lastModified += 1000;
+	}
+
+	private Object create(Class<?> type) {
+		return Proxy.newProxyInstance(FakeNote.class.getClassLoader(),
+				new Class<?>[] { type }, this);
+	}
+
+	public Object invoke(Object proxy, Method method, Object[] args) {
+		String name = method.getName();
+		if (name.equals("hashCode")) {
+			return System.identityHashCode(proxy);
+		} else if (name.equals("equals")) {
+			return proxy == args[0];
+		} else if (items.containsKey(proxy)) {
+			if (name.equals("getType")) {
+				return Item.RICHTEXT;
+			} else if (name.equals("getName")) {
+				return items.get(proxy);
+			} else if (name.equals("getParent")) {
+				return doc;
+			} else if (name.equals("getUnformattedText")
+					|| name.equals("getText")) {
+				return "plain " + items.get(proxy);
+			}
+		} else if (proxy == doc) {
+			if (name.equals("getParentDatabase")) {
+				return database;
+			} else if (name.equals("getFirstItem")) {
+				return getItem((String) args[0]);
+			} else if (name.equals("getItems")) {
+				return new Vector<Object>(items.keySet());
+			} else if (name.equals("getUniversalID")) {
+				return unid;
+			} else if (name.equals("getLastModified")) {
+				return modified;
+			}
+		} else if (proxy == modified && name.equals("toJavaDate")) {
+			return new Date(lastModified);
+		} else if (proxy == database && name.equals("getParent")) {
+			return session;
+		} else if (proxy == session && name.equals("createDxlExporter")) {
+			return exporter;
+		} else if (proxy == exporter && name.equals("exportDxl")) {
+			// an exporter may be shared by the notes of a session
+			FakeNote note = (FakeNote) Proxy.getInvocationHandler(args[0]);
+			note.exports++;
+			return note.getDxl();
+		}
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return Boolean.FALSE;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		} else if (type == double.class) {
+			return 0.0;
+		}
+		return null;
+	}
+
+}
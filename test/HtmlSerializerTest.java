@@ -0,0 +1,93 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package sirius.utils.domino;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class HtmlSerializerTest {
+
+	@Test
+	public void textAndAttributesAreEscaped() throws Exception {
+		Document doc = newDocument();
+		Element a = doc.createElement("a");
+		a.setAttribute("title", "x & <y> \"z\" 'w'");
+		a.appendChild(doc.createTextNode("x & <y> \"z\""));
+		assertEquals("<a title=\"x &amp; &lt;y&gt; &quot;z&quot; 'w'\">"
+				+ "x &amp; &lt;y&gt; \"z\"</a>", write(a));
+	}
+
+	@Test
+	public void voidElementsHaveNoEndTag() throws Exception {
+		Document doc = newDocument();
+		Element p = doc.createElement("p");
+		p.appendChild(doc.createElement("br"));
+		Element hr = doc.createElement("hr");
+		hr.setAttribute("style", "width:50%;");
+		p.appendChild(hr);
+		Element img = doc.createElement("img");
+		img.setAttribute("src", "a.gif");
+		img.setAttribute("alt", "a");
+		p.appendChild(img);
+		assertEquals("<p><br><hr style=\"width:50%;\">"
+				+ "<img alt=\"a\" src=\"a.gif\"></p>", write(p));
+
+		Map<String, String> attributes = new TreeMap<String, String>();
+		attributes.put("value", "<\"b\" & c>");
+		attributes.put("type", "button");
+		StringBuilder html = new StringBuilder();
+		HtmlSerializer.writeVoidElement("input", attributes, html);
+		assertEquals("<input type=\"button\" "
+				+ "value=\"&lt;&quot;b&quot; &amp; c&gt;\">", html.toString());
+	}
+
+	@Test
+	public void emptyElementsKeepTheirEndTag() throws Exception {
+		Document doc = newDocument();
+		Element div = doc.createElement("div");
+		Element p = doc.createElement("p");
+		p.setAttribute("class", "rt1");
+		div.appendChild(p);
+		div.appendChild(doc.createElement("span"));
+		assertEquals("<div><p class=\"rt1\"></p><span></span></div>",
+				write(div));
+	}
+
+	private static Document newDocument() throws Exception {
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.newDocument();
+	}
+
+	private static String write(Element element) throws Exception {
+		StringBuilder html = new StringBuilder();
+		HtmlSerializer.write(element, html);
+		return html.toString();
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package sirius.utils.domino;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import lotus.domino.DocumentCollection;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+public class RichText2HtmlBatchTest {
+
+	private static final String FAIL = "<pardef id='1'/><par def='1'><run>fail</run></par>";
+
+	@Test(timeout = 10000)
+	public void orderedRunsDeliverInExportOrder() throws Exception {
+		Recorder recorder = new Recorder();
+		new RichText2HtmlBatch(new RichText2HtmlConverter(), 3, 1, true)
+				.convert(notes(20, -1, null), recorder);
+		assertEquals(unids(20), recorder.converted);
+		assertTrue(recorder.failed.isEmpty());
+	}
+
+	@Test(timeout = 10000)
+	public void exceptionsAreReportedPerNote() throws Exception {
+		Recorder recorder = new Recorder();
+		new RichText2HtmlBatch(new RichText2HtmlConverter(), 2, 1, true)
+				.convert(notes(8, 3, "<par def='1'>unclosed"), recorder);
+		List<String> converted = unids(8);
+		converted.remove(3);
+		assertEquals(converted, recorder.converted);
+		assertEquals(unids(8).subList(3, 4), recorder.failed);
+	}
+
+	@Test(timeout = 10000)
+	public void errorsStopAnOrderedRunWithoutHanging() throws Exception {
+		Recorder recorder = new Recorder();
+		try {
+			new RichText2HtmlBatch(failing(new AssertionError("broken")), 2,
+					1, true).convert(notes(40, 0, FAIL), recorder);
+			fail("the Error was swallowed");
+		} catch (AssertionError e) {
+			assertEquals("broken", e.getMessage());
+		}
+		assertTrue(recorder.converted.isEmpty());
+	}
+
+	@Test(timeout = 10000)
+	public void callbackExceptionsStopTheRun() throws Exception {
+		try {
+			new RichText2HtmlBatch(new RichText2HtmlConverter(), 2, 1, false)
+					.convert(notes(40, -1, null), new Recorder() {
+						public void converted(String unid,
+								Map<String, String> html) {
+							throw new IllegalStateException("callback");
+						}
+					});
+			fail("the callback exception was swallowed");
+		} catch (IllegalStateException e) {
+			assertEquals("callback", e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns a converter whose run handler throws on runs reading "fail".
+	 */
+	private static RichText2HtmlConverter failing(final Error failure) {
+		RichText2HtmlConverter converter = new RichText2HtmlConverter();
+		final ElementHandler run = converter.getHandler("run");
+		return converter.withHandler("run", new ElementHandler() {
+			public Node convert(Node element, RichText2Html context)
+					throws Exception {
+				if (element.getTextContent().equals("fail")) {
+					throw failure;
+				}
+				return run.convert(element, context);
+			}
+		});
+	}
+
+	/**
+	 * Returns count notes, of which the one at failing has the given body.
+	 */
+	private static DocumentCollection notes(int count, int failing,
+			String body) {
+		FakeNote[] notes = new FakeNote[count];
+		for (int i = 0; i < count; i++) {
+			notes[i] = new FakeNote(unid(i)).with("Body", i == failing ? body
+					: "<pardef id='1'/><par def='1'><run>note " + i
+							+ "</run></par>");
+		}
+		return FakeNote.collection(notes);
+	}
+
+	private static List<String> unids(int count) {
+		List<String> unids = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			unids.add(unid(i));
+		}
+		return unids;
+	}
+
+	private static String unid(int i) {
+		return String.format("%032X", i);
+	}
+
+	private static class Recorder implements RichText2HtmlBatch.Callback {
+
+		final List<String> converted = new ArrayList<String>();
+		final List<String> failed = new ArrayList<String>();
+
+		public void converted(String unid, Map<String, String> html) {
+			assertTrue(html.get("Body").startsWith("<p"));
+			converted.add(unid);
+		}
+
+		public void failed(String unid, Exception cause) {
+			failed.add(unid);
+		}
+
+	}
+
+}
@@ -0,0 +1,254 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package sirius.utils.domino;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RichText2HtmlConverterTest {
+
+	static final String MEMO = "<pardef id='1'/><par def='1'>Hello "
+			+ "<run><font style='bold'/>bold &amp; brave</run> world</par>";
+	static final String LIST = "<pardef id='1' list='bullet' leftmargin='1.25in'/>"
+			+ "<pardef id='2'/><par def='1'>one</par><par def='1'>two</par>"
+			+ "<par def='2'>after</par>";
+	static final String TABLE = "<pardef id='1'/><table widthtype='fitmargins'>"
+			+ "<tablecolumn width='1in'/><tablecolumn width='2in'/>"
+			+ "<tablerow><tablecell rowspan='2'><par def='1'>a</par></tablecell>"
+			+ "<tablecell><par def='1'>b</par></tablecell></tablerow>"
+			+ "<tablerow><tablecell><par def='1'>c</par></tablecell></tablerow>"
+			+ "</table>";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void parseAllExportsTheNoteOnce() {
+		FakeNote note = new FakeNote().with("Body", MEMO).with("Notes", LIST);
+		Map<String, String> html = new RichText2HtmlConverter()
+				.parseAll(note.getDocument());
+		assertEquals(Arrays.asList("Body", "Notes"),
+				new ArrayList<String>(html.keySet()));
+		assertTrue(html.get("Body").contains("bold &amp; brave"));
+		assertTrue(html.get("Notes").contains("<li"));
+		assertEquals(1, note.getExports());
+	}
+
+	@Test
+	public void parseItemConvertsOnlyThatItem() {
+		FakeNote note = new FakeNote().with("Body", MEMO).with("Notes", LIST);
+		RichText2HtmlConverter converter = new RichText2HtmlConverter();
+		String html = converter.parse(note.getItem("Notes"));
+		assertEquals(converter.parse(LIST, ""), html);
+	}
+
+	@Test
+	public void parseItemsMatchesParseAll() throws Exception {
+		FakeNote note = new FakeNote().with("Body", MEMO).with("Table", TABLE);
+		RichText2HtmlConverter converter = new RichText2HtmlConverter();
+		assertEquals(converter.parseAll(note.getDocument()), converter
+				.parseItems(note.getDxl()));
+	}
+
+	@Test
+	public void streamingMatchesDom() throws Exception {
+		List<String> inputs = new ArrayList<String>(Arrays.asList(MEMO, LIST,
+				TABLE));
+		String pardefs = "<pardef id='1' align='center' spaceafter='2'/>"
+				+ "<pardef id='2'/>";
+		// elements the streamer writes without content, last in the
+		// document and last in a table cell
+		for (String last : new String[] { "<break/>", "<par def='1'/>",
+				"<par def='2'/>", "<horizrule height='2' width='100%'/>",
+				"<button widthtype='fitcontent'>b &amp; \"c\"</button>" }) {
+			inputs.add(pardefs + "<par def='2'>a</par>" + last);
+			inputs.add(pardefs + "<table><tablecolumn width='1in'/>"
+					+ "<tablerow><tablecell><par def='2'>a</par>" + last
+					+ "</tablecell></tablerow></table><break/>");
+		}
+		for (int options : new int[] { RichText2Html.ALL_OPTIONS_OFF,
+				RichText2Html.USE_INLINE_STYLES, RichText2Html.USE_CSS_CLASSES }) {
+			RichText2HtmlConverter converter = new RichText2HtmlConverter(
+					options);
+			for (String dxl : inputs) {
+				StringWriter html = new StringWriter();
+				converter.parse(new StringReader(dxl), html);
+				// the streamer can only write the stylesheet at the end
+				RichText2HtmlResult result = converter.convert(dxl, "");
+				String styled = result.getStyledHtml();
+				// the streamer names the classes of a cell after its content
+				assertEquals(dxl, sortRules(result.getHtml()
+						+ styled.substring(0, styled.length()
+								- result.getHtml().length())),
+						sortRules(html.toString()));
+			}
+		}
+	}
+
+	private static String sortRules(String html) {
+		int start = html.indexOf("<style");
+		if (start < 0) {
+			return html;
+		}
+		int end = html.indexOf("</style>", start);
+		List<String> rules = new ArrayList<String>(Arrays.asList(html
+				.substring(html.indexOf('\n', start) + 1, end).split("\n")));
+		Collections.sort(rules);
+		return html.substring(0, html.indexOf('\n', start) + 1)
+				+ String.join("\n", rules) + "\n" + html.substring(end);
+	}
+
+	@Test
+	public void registeredHandlersReplaceBuiltInOnes() {
+		String dxl = "<pardef id='1'/><par def='1'>a<break/>b</par>";
+		RichText2HtmlConverter converter = new RichText2HtmlConverter();
+		RichText2HtmlConverter custom = converter.withHandler("break", (
+				element, context) -> element.getOwnerDocument().createElement(
+				"wbr"));
+		assertEquals("<p>a<wbr>b</p>", custom.parse(dxl, ""));
+		assertEquals("<p>a<br>b</p>", converter.parse(dxl, ""));
+		assertEquals("<p>ab</p>", converter.withHandler("break", (element,
+				context) -> null).parse(dxl, ""));
+	}
+
+	@Test
+	public void removedHandlersLeaveTheElement() {
+		RichText2HtmlConverter converter = new RichText2HtmlConverter();
+		assertEquals("<p>Hello <strong>bold &amp; brave</strong> world</p>",
+				converter.parse(MEMO, ""));
+		assertEquals("<p>Hello <run><font style=\"bold\"></font>bold &amp; "
+				+ "brave</run> world</p>", converter.withoutHandler("run")
+				.parse(MEMO, ""));
+		assertSame(null, converter.withoutHandler("run").getHandler("run"));
+	}
+
+	@Test
+	public void classRulesStayInsideTheStylesheet() throws Exception {
+		String dxl = "<pardef id='1'/><par def='1'><run><font style='bold' "
+				+ "name='x}&lt;/style&gt;&lt;b&gt;{color:red&#10;.y{'/>a</run>"
+				+ "</par>";
+		RichText2HtmlConverter converter = new RichText2HtmlConverter(
+				RichText2Html.USE_CSS_CLASSES);
+		String css = converter.convert(dxl, "").getCss();
+		assertTrue(css, css.matches("\\.rt\\w+\\{font-weight:bold;"
+				+ "font-family:x/stylebcolor:red\\.y;\\}\n"));
+
+		StringWriter html = new StringWriter();
+		converter.parse(new StringReader(dxl), html);
+		assertTrue(html.toString(), html.toString().endsWith(
+				"<style type=\"text/css\">\n" + css + "</style>"));
+	}
+
+	@Test
+	public void cachedNotesAreNotExportedAgain() {
+		FakeNote note = new FakeNote().with("Body", MEMO);
+		HtmlCache cache = new HtmlCache(1 << 20);
+		RichText2HtmlConverter converter = new RichText2HtmlConverter()
+				.withCache(cache);
+		Map<String, String> first = converter.parseAll(note.getDocument());
+		assertEquals(first, converter.parseAll(note.getDocument()));
+		assertEquals(1, note.getExports());
+		assertEquals(1, cache.getHits());
+
+		note.touch();
+		assertEquals(first, converter.parseAll(note.getDocument()));
+		assertEquals(2, note.getExports());
+	}
+
+	@Test
+	public void cacheKeysIncludeTheOptions() {
+		HtmlCache cache = new HtmlCache(1 << 20);
+		RichText2HtmlConverter inline = new RichText2HtmlConverter()
+				.withCache(cache);
+		RichText2HtmlConverter classes = inline
+				.withOptions(RichText2Html.USE_CSS_CLASSES);
+		String html = inline.parse(MEMO, "");
+		assertEquals(new RichText2HtmlConverter(
+				RichText2Html.USE_CSS_CLASSES).parse(MEMO, ""), classes
+				.parse(MEMO, ""));
+		assertSame(inline.convert(MEMO, "").getHtml(), inline
+				.convert(MEMO, "").getHtml());
+		assertEquals(html, inline.parse(MEMO, ""));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void diskCacheSurvivesReopening() throws Exception {
+		File dir = folder.newFolder();
+		DiskCache cache = new DiskCache(dir, 1 << 20);
+		String html;
+		try {
+			html = new RichText2HtmlConverter().withDiskCache(cache).parse(
+					TABLE, "");
+			assertEquals(0, cache.getHits());
+		} finally {
+			cache.close();
+		}
+		cache = new DiskCache(dir, 1 << 20);
+		try {
+			assertEquals(1, cache.size());
+			assertEquals(html, new RichText2HtmlConverter().withDiskCache(
+					cache).parse(TABLE, ""));
+			assertEquals(1, cache.getHits());
+		} finally {
+			cache.close();
+		}
+	}
+
+	@Test
+	public void parseDatabaseConvertsEveryRichTextItem() throws Exception {
+		FakeNote first = new FakeNote().with("Body", MEMO);
+		FakeNote second = new FakeNote().with("Body", LIST).with("Table",
+				TABLE);
+		String dxl = "<?xml version='1.0' encoding='utf-8'?>\n<database>"
+				+ strip(first.getDxl()) + strip(second.getDxl())
+				+ "</database>";
+		final RichText2HtmlConverter converter = new RichText2HtmlConverter();
+		final List<String> converted = new ArrayList<String>();
+		converter.parseDatabase(new StringReader(dxl), new ItemCallback() {
+			public void converted(String unid, String itemName, String html) {
+				converted.add(itemName + "=" + html);
+			}
+		});
+		assertEquals(Arrays.asList("Body=" + converter.parse(MEMO, ""),
+				"Body=" + converter.parse(LIST, ""), "Table="
+						+ converter.parse(TABLE, "")), converted);
+	}
+
+	private static String strip(String note) {
+		return note.substring(note.indexOf("<document"));
+	}
+
+}
@@ -0,0 +1,171 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package sirius.utils.domino;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RichText2HtmlFilesTest {
+
+	private static final String MEMO = RichText2HtmlConverterTest.MEMO;
+	private static final String LIST = RichText2HtmlConverterTest.LIST;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final RichText2HtmlConverter converter = new RichText2HtmlConverter();
+
+	@Test
+	public void directoriesAreMirrored() throws Exception {
+		File input = folder.newFolder("in");
+		File output = folder.newFolder("out");
+		dxl(new File(input, "a/x.dxl"), new FakeNote().with("Body", MEMO));
+		dxl(new File(input, "b/x.dxl"), new FakeNote().with("Body", LIST)
+				.with("Notes", MEMO));
+		RichText2HtmlFiles.Summary summary = new RichText2HtmlFiles(
+				converter, 2).convert(input, output);
+		assertEquals(summary.toString(), 0, summary.getFailed());
+		assertEquals(2, summary.getDocuments());
+		assertEquals(3, summary.getItems());
+		assertEquals(converter.parse(MEMO, ""), html(output, "a/x.html"));
+		assertEquals(converter.parse(LIST, ""), html(output, "b/x.Body.html"));
+		assertEquals(converter.parse(MEMO, ""), html(output, "b/x.Notes.html"));
+	}
+
+	@Test
+	public void listedFilesOfTheSameNameDoNotOverwriteEachOther()
+			throws Exception {
+		File a = dxl(folder.newFile("a.dxl").getParentFile().toPath()
+				.resolve("a/x.dxl").toFile(), new FakeNote().with("Body", MEMO));
+		File b = dxl(new File(a.getParentFile().getParentFile(), "b/x.dxl"),
+				new FakeNote().with("Body", LIST));
+		File output = folder.newFolder("out");
+		RichText2HtmlFiles.Summary summary = new RichText2HtmlFiles(
+				converter, 2).convert(Arrays.asList(a, b), output);
+		assertEquals(summary.toString(), 0, summary.getFailed());
+		assertEquals(converter.parse(MEMO, ""), html(output, RichText2HtmlFiles
+				.mirror(a.toPath()).toString().replace(".dxl", ".html")));
+		assertEquals(converter.parse(LIST, ""), html(output, RichText2HtmlFiles
+				.mirror(b.toPath()).toString().replace(".dxl", ".html")));
+	}
+
+	@Test
+	public void itemNamesThatMapAlikeAreNumbered() throws Exception {
+		File input = folder.newFolder("in");
+		File output = folder.newFolder("out");
+		dxl(new File(input, "x.dxl"), new FakeNote().with("Body 1", MEMO)
+				.with("Body_1", LIST));
+		RichText2HtmlFiles.Summary summary = new RichText2HtmlFiles(
+				converter, 1).convert(input, output);
+		assertEquals(summary.toString(), 0, summary.getFailed());
+		assertEquals(converter.parse(MEMO, ""), html(output, "x.Body_1.html"));
+		assertEquals(converter.parse(LIST, ""), html(output,
+				"x.Body_1-2.html"));
+	}
+
+	@Test
+	public void filesWritingTheSameOutputFail() throws Exception {
+		File input = folder.newFolder("in");
+		File output = folder.newFolder("out");
+		// a.b.html is the only item of a.b.dxl and item b of a.dxl
+		dxl(new File(input, "a.b.dxl"), new FakeNote().with("Body", MEMO));
+		dxl(new File(input, "a.dxl"), new FakeNote().with("b", LIST).with(
+				"c", LIST));
+		RichText2HtmlFiles.Summary summary = new RichText2HtmlFiles(
+				converter, 1).convert(input, output);
+		assertEquals(1, summary.getDocuments());
+		assertEquals(1, summary.getFailed());
+		assertTrue(summary.getFailures().values().iterator()
+				.next() instanceof FileAlreadyExistsException);
+		// the failed file wrote none of its outputs
+		assertEquals(2, output.list().length);
+	}
+
+	@Test
+	public void errorsAreCountedAsFailures() throws Exception {
+		File input = folder.newFolder("in");
+		File output = folder.newFolder("out");
+		dxl(new File(input, "x.dxl"), new FakeNote().with("Body", MEMO));
+		dxl(new File(input, "y.dxl"), new FakeNote().with("Body", LIST));
+		RichText2HtmlFiles.Summary summary = new RichText2HtmlFiles(converter
+				.withHandler("run", (element, context) -> {
+					throw new StackOverflowError();
+				}), 1).convert(input, output);
+		// only the memo has runs
+		assertEquals(1, summary.getDocuments());
+		assertEquals(1, summary.getFailed());
+		// only the converted file counts toward the throughput
+		assertEquals(new File(input, "y.dxl").length(), summary.getBytes());
+		assertEquals(Arrays.asList(StackOverflowError.class.getName()),
+				Arrays.asList(summary.getCauses().keySet().toArray()));
+	}
+
+	@Test
+	public void everyVariantStopsWhenInterrupted() throws Exception {
+		File input = folder.newFolder("in");
+		File output = folder.newFolder("out");
+		File file = dxl(new File(input, "x.dxl"), new FakeNote().with("Body",
+				MEMO));
+		RichText2HtmlFiles files = new RichText2HtmlFiles(converter, 1);
+		for (int variant = 0; variant < 3; variant++) {
+			Thread.currentThread().interrupt();
+			try {
+				if (variant == 0) {
+					files.convert(input, output);
+				} else if (variant == 1) {
+					files.convert(Arrays.asList(file), output);
+				} else {
+					files.convert(new BufferedReader(new StringReader(file
+							.getPath())), output);
+				}
+				fail("variant " + variant);
+			} catch (InterruptedException e) {
+				assertTrue(!Thread.currentThread().isInterrupted());
+			}
+		}
+		assertEquals(0, output.list().length);
+	}
+
+	private static File dxl(File file, FakeNote note) throws IOException {
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), note.getDxl().getBytes("UTF-8"));
+		return file;
+	}
+
+	private static String html(File output, String name) throws IOException {
+		return new String(Files.readAllBytes(new File(output, name).toPath()),
+				"UTF-8");
+	}
+
+}
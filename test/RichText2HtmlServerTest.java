@@ -0,0 +1,185 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package sirius.utils.domino;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RichText2HtmlServerTest {
+
+	private static final String MEMO = RichText2HtmlConverterTest.MEMO;
+
+	private final RichText2HtmlConverter converter = new RichText2HtmlConverter();
+	private RichText2HtmlServer server;
+	private HttpURLConnection connection;
+
+	@Before
+	public void start() throws IOException {
+		server = new RichText2HtmlServer(converter, new InetSocketAddress(
+				"127.0.0.1", 0), 1 << 16);
+		server.start();
+	}
+
+	@After
+	public void stop() {
+		server.close();
+	}
+
+	@Test
+	public void convertsRichText() throws IOException {
+		assertEquals(converter.parse(MEMO, ""), post("/convert", MEMO));
+		assertEquals(200, connection.getResponseCode());
+		assertEquals("COMPLETE", connection
+				.getHeaderField("X-Conversion-Status"));
+		assertEquals(converter.parse(MEMO, ""), post("/convert",
+				"<richtext>" + MEMO + "</richtext>"));
+	}
+
+	@Test
+	public void convertsTheItemsOfNotes() throws IOException {
+		FakeNote note = new FakeNote().with("Body", MEMO).with("Notes",
+				RichText2HtmlConverterTest.LIST);
+		assertEquals(converter.parse(MEMO, ""), post("/convert", note
+				.getDxl()));
+		assertEquals(converter.parse(RichText2HtmlConverterTest.LIST, ""),
+				post("/convert?item=Notes", note.getDxl()));
+		post("/convert?item=Other", note.getDxl());
+		assertEquals(404, connection.getResponseCode());
+
+		// a bare item, without a document around it
+		assertEquals(converter.parse(MEMO, ""), post("/convert",
+				"<item name='Body'><richtext>" + MEMO + "</richtext></item>"));
+	}
+
+	@Test
+	public void itemsReportTheirStatus() throws IOException {
+		server.close();
+		server = new RichText2HtmlServer(converter
+				.withLimits(ConversionLimits.NONE.withMaxOutputLength(10)),
+				new InetSocketAddress("127.0.0.1", 0), 1 << 16);
+		server.start();
+		post("/convert", new FakeNote().with("Body", MEMO).getDxl());
+		assertEquals(200, connection.getResponseCode());
+		assertEquals("TRUNCATED", connection
+				.getHeaderField("X-Conversion-Status"));
+		assertEquals("OUTPUT_LENGTH", connection
+				.getHeaderField("X-Conversion-Limit"));
+	}
+
+	@Test
+	public void malformedDxlIsUnprocessable() throws IOException {
+		post("/convert", "<par def='1'>unclosed");
+		assertEquals(422, connection.getResponseCode());
+		post("/convert", new FakeNote().with("Body", "<par def='1'>unclosed")
+				.getDxl());
+		assertEquals(422, connection.getResponseCode());
+	}
+
+	@Test
+	public void rejectsOtherRequests() throws IOException {
+		post("/convert?options=BOGUS", MEMO);
+		assertEquals(400, connection.getResponseCode());
+		StringBuilder large = new StringBuilder();
+		while (large.length() <= 1 << 16) {
+			large.append(MEMO);
+		}
+		post("/convert", large.toString());
+		assertEquals(413, connection.getResponseCode());
+		assertEquals("OK\n", get("/health"));
+	}
+
+	@Test
+	public void metricsTellLatenciesByStatus() throws IOException {
+		post("/convert", MEMO);
+		post("/convert", "<par def='1'>unclosed");
+		post("/convert", "<par def='1'>unclosed");
+		get("/convert");
+		assertEquals(405, connection.getResponseCode());
+		String metrics = get("/metrics");
+		assertTrue(metrics, metrics.contains(
+				"richtext2html_latency_seconds{status=\"200\",quantile=\"0.5\"}"));
+		assertTrue(metrics, metrics.contains(
+				"richtext2html_latency_seconds_count{status=\"200\"} 1\n"));
+		assertTrue(metrics, metrics.contains(
+				"richtext2html_latency_seconds_count{status=\"422\"} 2\n"));
+		assertTrue(metrics, metrics.contains(
+				"richtext2html_responses_total{status=\"422\"} 2\n"));
+		// only POSTs are conversions
+		assertTrue(metrics, metrics.contains(
+				"richtext2html_responses_total{status=\"405\"} 1\n"));
+		assertTrue(metrics, !metrics.contains("status=\"405\",quantile"));
+		assertTrue(metrics, !metrics.contains(
+				"richtext2html_latency_seconds_count{status=\"405\"}"));
+	}
+
+	private String post(String path, String body) throws IOException {
+		connection = open(path);
+		connection.setRequestMethod("POST");
+		connection.setDoOutput(true);
+		OutputStream out = connection.getOutputStream();
+		try {
+			out.write(body.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		return read();
+	}
+
+	private String get(String path) throws IOException {
+		connection = open(path);
+		return read();
+	}
+
+	private HttpURLConnection open(String path) throws IOException {
+		InetSocketAddress address = server.getAddress();
+		return (HttpURLConnection) new URL("http://127.0.0.1:"
+				+ address.getPort() + path).openConnection();
+	}
+
+	private String read() throws IOException {
+		InputStream in = connection.getResponseCode() < 400 ? connection
+				.getInputStream() : connection.getErrorStream();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) >= 0) {
+				body.write(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return body.toString("UTF-8");
+	}
+
+}
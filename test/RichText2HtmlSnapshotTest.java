@@ -0,0 +1,122 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package sirius.utils.domino;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class RichText2HtmlSnapshotTest {
+
+	/** "Aa" and "BB" have the same String hash code. */
+	static final String AA = "<par def='1'><run><font style='bold' color='Aa'/>aa</run></par>";
+	static final String BB = "<par def='1'><run><font style='bold' color='BB'/>bb</run></par>";
+	static final String PARDEF = "<pardef id='1'/>";
+
+	private final RichText2HtmlConverter converter = new RichText2HtmlConverter(
+			RichText2Html.USE_CSS_CLASSES);
+
+	@Test
+	public void unchangedBlocksAreReused() {
+		String first = PARDEF + AA + "<par def='1'>plain</par>" + BB;
+		RichText2HtmlSnapshot snapshot = converter.convert(first, "", null);
+		assertEquals(3, snapshot.getBlockCount());
+		assertEquals(0, snapshot.getReusedBlockCount());
+
+		String second = PARDEF + AA + "<par def='1'>edited</par>" + BB;
+		RichText2HtmlSnapshot next = converter.convert(second, "", snapshot);
+		assertEquals(2, next.getReusedBlockCount());
+		assertEquals(converter.parse(second, ""), next.getResult()
+				.getStyledHtml());
+	}
+
+	@Test
+	public void clashingClassNamesStayApart() {
+		RichText2HtmlResult result = converter.convert(PARDEF + AA + BB, "",
+				null).getResult();
+		assertEquals("font-weight:bold;color:Aa;", style(result, "aa"));
+		assertEquals("font-weight:bold;color:BB;", style(result, "bb"));
+	}
+
+	@Test
+	public void blocksTransformedInParallelShareClassNames() {
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			RichText2HtmlResult result = converter.withParallelTransform(2,
+					pool).convert(PARDEF + AA + BB, "");
+			assertEquals("font-weight:bold;color:Aa;", style(result, "aa"));
+			assertEquals("font-weight:bold;color:BB;", style(result, "bb"));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void reusedBlocksKeepTheirClassNames() {
+		RichText2HtmlSnapshot snapshot = converter.convert(PARDEF + BB, "",
+				null);
+		RichText2HtmlSnapshot next = converter.convert(PARDEF + AA + BB, "",
+				snapshot);
+		assertEquals(1, next.getReusedBlockCount());
+		RichText2HtmlResult result = next.getResult();
+		assertEquals("font-weight:bold;color:Aa;", style(result, "aa"));
+		assertEquals("font-weight:bold;color:BB;", style(result, "bb"));
+
+		// the previous snapshot is not changed by the next conversion
+		result = converter.convert(PARDEF + AA, "", snapshot).getResult();
+		assertEquals("font-weight:bold;color:Aa;", style(result, "aa"));
+	}
+
+	@Test
+	public void blocksOfAnotherLengthAreConvertedAgain() {
+		RichText2HtmlSnapshot snapshot = converter.convert(PARDEF + AA, "",
+				null);
+		assertEquals(0, converter.convert(PARDEF + AA.replace("aa", "aaa"),
+				"", snapshot).getReusedBlockCount());
+		assertEquals(1, converter.convert(PARDEF + AA, "", snapshot)
+				.getReusedBlockCount());
+	}
+
+	/**
+	 * Returns the declaration of the class of the element holding text.
+	 */
+	static String style(RichText2HtmlResult result, String text) {
+		Map<String, String> rules = new HashMap<String, String>();
+		Matcher rule = Pattern.compile("\\.([\\w-]+)\\{([^}]*)\\}").matcher(
+				result.getCss());
+		while (rule.find()) {
+			assertEquals(null, rules.put(rule.group(1), rule.group(2)));
+		}
+		Matcher element = Pattern.compile(
+				"class=\"([\\w-]+)\">" + Pattern.quote(text) + "<").matcher(
+				result.getHtml());
+		assertTrue(result.getHtml(), element.find());
+		return rules.get(element.group(1));
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ *  lnrt2html - Lotus Notes Rich Text to HTML Converter
+ *
+ *  Copyright (c) 2011 Tran Dinh Thoai <dthoai@yahoo.com>
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 3.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+
+package sirius.utils.domino;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TableLayoutTest {
+
+	@Test
+	public void spansCoverTheCellsBelowAndRight() {
+		TableLayout layout = layout(3);
+		assertEquals(1, layout.nextFreeColumn(1, 1));
+		layout.span(1, 1, 2, 2);
+		assertEquals(3, layout.nextFreeColumn(1, 2));
+		layout.release(1);
+		assertEquals(3, layout.nextFreeColumn(2, 1));
+		layout.release(2);
+		assertEquals(1, layout.nextFreeColumn(3, 1));
+	}
+
+	@Test
+	public void nonsensicalSpansAreOne() {
+		TableLayout layout = layout(4);
+		for (String value : new String[] { null, "", "0", "-3", "x", "2.5",
+				"99999999999" }) {
+			assertEquals(value, 1, layout.getRowspan(value));
+			assertEquals(value, 1, layout.getColspan(1, value));
+		}
+		assertEquals(2, layout.getRowspan(" 2 "));
+	}
+
+	@Test
+	public void colspansEndWithTheDeclaredColumns() {
+		TableLayout layout = layout(4);
+		assertEquals(4, layout.getColspan(1, "2000000000"));
+		assertEquals(2, layout.getColspan(3, "7"));
+		assertEquals(TableLayout.MAX_COLSPAN, layout.getColspan(5,
+				"2000000000"));
+		assertEquals(TableLayout.MAX_ROWSPAN, layout.getRowspan("20000000"));
+	}
+
+	@Test(timeout = 10000)
+	public void hugeSpansAreCheap() throws Exception {
+		StringBuilder dxl = new StringBuilder("<pardef id='1'/><table>"
+				+ "<tablecolumn width='1in'/><tablecolumn width='1in'/>"
+				+ "<tablerow><tablecell rowspan='20000000' "
+				+ "columnspan='2000000000'><par def='1'>big</par></tablecell>"
+				+ "</tablerow>");
+		for (int i = 0; i < 3; i++) {
+			dxl.append("<tablerow><tablecell><par def='1'>").append(i)
+					.append("</par></tablecell></tablerow>");
+		}
+		dxl.append("</table>");
+		RichText2HtmlConverter converter = new RichText2HtmlConverter()
+				.withLimits(ConversionLimits.NONE.withTimeout(1,
+						TimeUnit.SECONDS).withMaxTableCells(100));
+		String html = converter.parse(dxl.toString(), "");
+		assertTrue(html, html.contains("big") && html.contains(">2</p>"));
+
+		StringWriter streamed = new StringWriter();
+		converter.parse(new StringReader(dxl.toString()), streamed);
+		assertTrue(streamed.toString().contains(">2</p>"));
+	}
+
+	private static TableLayout layout(int columns) {
+		TableLayout layout = new TableLayout(null, null);
+		for (int i = 0; i < columns; i++) {
+			layout.addColumn("1in");
+		}
+		layout.rowCount = 3;
+		return layout;
+	}
+
+}